@@ -21,13 +21,12 @@ package org.fit.cssbox.awt;
 
 import java.awt.Graphics2D;
 import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint;
 import java.awt.RadialGradientPaint;
 import java.awt.MultipleGradientPaint.ColorSpaceType;
 import java.awt.MultipleGradientPaint.CycleMethod;
-import java.awt.Paint;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 
@@ -83,9 +82,10 @@ public class BackgroundBitmap extends ElementBackground
             if (img.getImage() instanceof BitmapImage)
             {
                 Rectangle pos = computeTargetImagePosition(img);
-                BufferedImage image = ((BitmapImage) img.getImage()).getBufferedImage();
-                float origw = img.getIntrinsicWidth();
-                float origh = img.getIntrinsicHeight();
+                final BitmapImage bitmap = (BitmapImage) img.getImage();
+                BufferedImage image = bitmap.getBufferedImage(pos.width, pos.height);
+                float origw = img.getIntrinsicWidth() * (image.getWidth() / bitmap.getWidth());
+                float origh = img.getIntrinsicHeight() * (image.getHeight() / bitmap.getHeight());
                 applyImage(image, pos, origw, origh, img.isRepeatX(), img.isRepeatY());
             }
         }
@@ -116,17 +116,14 @@ public class BackgroundBitmap extends ElementBackground
 
     /**
      * Uses the paint for creating an image of the gradient and adding it to the target bitmap. 
+     * The gradient images are shared through the {@link GradientCache}.
      * @param p the paint to be applied
      * @param img the gradient image to be drawn
      */
-    private void addsGradientUsingPaint(Paint p, BackgroundImageGradient img)
+    private void addsGradientUsingPaint(MultipleGradientPaint p, BackgroundImageGradient img)
     {
         Rectangle pos = computeTargetImagePosition(img);
-        BufferedImage gradImg =
-                new BufferedImage(Math.round(pos.getWidth()), Math.round(pos.getHeight()), BufferedImage.TYPE_INT_ARGB_PRE);
-        Graphics2D g = gradImg.createGraphics();
-        g.setPaint(p);
-        g.fill(new Rectangle2D.Float(0, 0, pos.width, pos.height));
+        BufferedImage gradImg = GradientCache.getInstance().getTile(p, Math.round(pos.getWidth()), Math.round(pos.getHeight()));
         applyImage(gradImg, pos, pos.width, pos.height, img.isRepeatX(), img.isRepeatY());
     }
 
@@ -158,7 +155,7 @@ public class BackgroundBitmap extends ElementBackground
                     observer);
     }
 
-    private LinearGradientPaint createLinearGradientPaint(LinearGradient grad)
+    static LinearGradientPaint createLinearGradientPaint(LinearGradient grad)
     {
         Point2D start = new Point2D.Float(grad.getX1(), grad.getY1());
         Point2D end = new Point2D.Float(grad.getEfficientX2(), grad.getEfficientY2());
@@ -171,7 +168,7 @@ public class BackgroundBitmap extends ElementBackground
                 new AffineTransform());
     }
 
-    private RadialGradientPaint createRadialGradientPaint(RadialGradient grad)
+    static RadialGradientPaint createRadialGradientPaint(RadialGradient grad)
     {
         final float cx = grad.getCx();
         final float cy = grad.getCy();
@@ -206,7 +203,7 @@ public class BackgroundBitmap extends ElementBackground
         return gp;
     }
 
-    private void stopsToPaintValues(Gradient grad, float[] dists, java.awt.Color[] colors)
+    private static void stopsToPaintValues(Gradient grad, float[] dists, java.awt.Color[] colors)
     {
         for (int i = 0; i < grad.getStops().size(); i++)
         {
@@ -0,0 +1,194 @@
+/*
+ * BackgroundPainter.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 18:05:07 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.awt.Graphics2D;
+import java.awt.MultipleGradientPaint;
+import java.awt.Paint;
+import java.awt.Shape;
+import java.awt.TexturePaint;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+import org.fit.cssbox.layout.ElementBox;
+import org.fit.cssbox.layout.Rectangle;
+import org.fit.cssbox.render.BackgroundImageGradient;
+import org.fit.cssbox.render.BackgroundImageImage;
+import org.fit.cssbox.render.ElementBackground;
+import org.fit.cssbox.render.LinearGradient;
+import org.fit.cssbox.render.RadialGradient;
+
+/**
+ * Paints the background images of an element directly to the target graphics. Unlike
+ * {@link BackgroundBitmap}, no bitmap of the whole element background is created: the repeated
+ * images are painted using a {@link TexturePaint}, the small or repeated gradients are painted using
+ * the tiles shared through the {@link GradientCache} and the large gradients are filled using the gradient
+ * paints directly. Only the part of the background that is not clipped is painted. The background images
+ * must be painted in the order from the bottom-most one.
+ *
+ * @author agent
+ */
+public class BackgroundPainter extends ElementBackground
+{
+    private final Graphics2D g;
+
+
+    /**
+     * Creates a painter for the background of the given element.
+     * @param owner the element whose background is painted
+     * @param g the target graphics
+     */
+    public BackgroundPainter(ElementBox owner, Graphics2D g)
+    {
+        super(owner);
+        this.g = g;
+    }
+
+    /**
+     * Paints a background image based on its CSS properties.
+     * @param img the image to be painted
+     */
+    public void paintBackgroundImage(BackgroundImageImage img)
+    {
+        if (!isZeroSize() && img.getImage() instanceof BitmapImage)
+        {
+            final Rectangle pos = computeTargetImagePosition(img);
+            final BitmapImage bitmap = (BitmapImage) img.getImage();
+            BufferedImage image = bitmap.getBufferedImage(pos.width, pos.height);
+            if (image != null)
+            {
+                final int origw = Math.round(img.getIntrinsicWidth() * (image.getWidth() / bitmap.getWidth()));
+                final int origh = Math.round(img.getIntrinsicHeight() * (image.getHeight() / bitmap.getHeight()));
+                if (origw > 0 && origh > 0 && (origw < image.getWidth() || origh < image.getHeight()))
+                    image = image.getSubimage(0, 0, Math.min(origw, image.getWidth()), Math.min(origh, image.getHeight()));
+                paintImage(image, pos, img.isRepeatX(), img.isRepeatY());
+            }
+        }
+    }
+
+    /**
+     * Paints a background gradient based on its CSS properties.
+     * @param img the gradient to be painted
+     */
+    public void paintBackgroundImage(BackgroundImageGradient img)
+    {
+        if (!isZeroSize() && img.getGradient() != null)
+        {
+            final MultipleGradientPaint p;
+            if (img.getGradient() instanceof LinearGradient)
+                p = BackgroundBitmap.createLinearGradientPaint((LinearGradient) img.getGradient());
+            else if (img.getGradient() instanceof RadialGradient)
+                p = BackgroundBitmap.createRadialGradientPaint((RadialGradient) img.getGradient());
+            else
+                return;
+            final Rectangle pos = computeTargetImagePosition(img);
+            if (pos.width <= 0 || pos.height <= 0)
+                return;
+            final Rectangle area = getPaintedArea(pos, img.isRepeatX(), img.isRepeatY());
+            if (area == null)
+                return;
+            final GradientCache cache = GradientCache.getInstance();
+            final int tw = Math.round(pos.width);
+            final int th = Math.round(pos.height);
+            if (contains(pos, area) && !cache.accepts(tw, th))
+            {
+                //a single copy of a large gradient is visible, fill it directly
+                final Paint oldpaint = g.getPaint();
+                final float x = getBounds().x + pos.x;
+                final float y = getBounds().y + pos.y;
+                g.translate(x, y);
+                g.setPaint(p);
+                g.fill(new Rectangle2D.Float(area.x - pos.x, area.y - pos.y, area.width, area.height));
+                g.translate(-x, -y);
+                g.setPaint(oldpaint);
+            }
+            else
+            {
+                //repeated or small gradient, use a shared tile
+                final BufferedImage tile = cache.getTile(p, tw, th);
+                paintImage(tile, pos, img.isRepeatX(), img.isRepeatY());
+            }
+        }
+    }
+
+    //=========================================================================
+
+    /**
+     * Paints an image with the given repetition.
+     * @param image the image to be painted
+     * @param pos the target position and size of the first copy of the image relative to the background bounds
+     * @param repeatX repeat in X-axis?
+     * @param repeatY repeat in Y-axis?
+     */
+    private void paintImage(BufferedImage image, Rectangle pos, boolean repeatX, boolean repeatY)
+    {
+        if (pos.width <= 0 || pos.height <= 0)
+            return;
+        final Rectangle area = getPaintedArea(pos, repeatX, repeatY);
+        if (area == null)
+            return;
+        final Rectangle b = getBounds();
+        final int x1 = Math.round(b.x + pos.x);
+        final int y1 = Math.round(b.y + pos.y);
+        final int x2 = Math.round(b.x + pos.x + pos.width);
+        final int y2 = Math.round(b.y + pos.y + pos.height);
+        if (x2 <= x1 || y2 <= y1)
+            return;
+        final Shape oldclip = g.getClip();
+        final Rectangle2D.Float absarea = new Rectangle2D.Float(b.x + area.x, b.y + area.y, area.width, area.height);
+        if (!repeatX && !repeatY)
+        {
+            g.clip(absarea);
+            g.drawImage(image, x1, y1, x2, y2, 0, 0, image.getWidth(), image.getHeight(), null);
+        }
+        else
+        {
+            final Paint oldpaint = g.getPaint();
+            g.setPaint(new TexturePaint(image, new Rectangle2D.Float(x1, y1, x2 - x1, y2 - y1)));
+            g.fill(absarea);
+            g.setPaint(oldpaint);
+        }
+        g.setClip(oldclip);
+    }
+
+    /**
+     * Computes the area covered by the image and its repetitions within the background bounds that
+     * is not clipped.
+     * @return the area relative to the background bounds or {@code null} when nothing is visible
+     */
+    private Rectangle getPaintedArea(Rectangle pos, boolean repeatX, boolean repeatY)
+    {
+        final Rectangle b = getBounds();
+        final Rectangle covered = new Rectangle(repeatX ? 0 : pos.x, repeatY ? 0 : pos.y,
+                repeatX ? b.width : pos.width, repeatY ? b.height : pos.height);
+        final Rectangle ret = covered.intersection(new Rectangle(0, 0, b.width, b.height)).intersection(getClipped());
+        if (ret.width <= 0 || ret.height <= 0)
+            return null;
+        return ret;
+    }
+
+    private static boolean contains(Rectangle outer, Rectangle inner)
+    {
+        return inner.x >= outer.x && inner.y >= outer.y
+                && inner.x + inner.width <= outer.x + outer.width
+                && inner.y + inner.height <= outer.y + outer.height;
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * BatchRenderer.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:50:33 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.layout.BoundedImageCache;
+import org.fit.cssbox.layout.BrowserConfig;
+import org.fit.cssbox.layout.Dimension;
+import org.fit.cssbox.layout.Rectangle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import cz.vutbr.web.css.MediaSpec;
+import cz.vutbr.web.css.StyleSheet;
+
+/**
+ * Renders a single document for several media specifications (e.g. several viewport widths) at once.
+ * The style sheets are loaded and parsed only once by a template analyzer and they are shared by all
+ * the variants; only the inline style definitions, that are bound to the individual elements, are
+ * created for each variant. All the variants share a single browser configuration and therefore
+ * a single image cache so that the images are loaded and decoded only once; the resolved fonts are
+ * shared through the {@link FontRegistry}.
+ *
+ * The variants are processed by a pool of worker threads. Since the DOM implementations are
+ * generally not thread-safe even for reading (e.g. the deferred nodes of the Xerces DOM are expanded
+ * on the first access and the node lists are cached), each variant uses its own copy of the document.
+ * The copies are created and their box trees (that require the style computation using the shared
+ * style sheets) are built one at a time; the layout, that still reads the DOM of the variant, and the
+ * painting of the variants run in parallel. Therefore, the boxes of the resulting engines refer to
+ * the nodes of the document copies, not to the nodes of the template document.
+ *
+ * The style sheets linked with a {@code media} attribute are filtered by the template analyzer
+ * when loaded; therefore, their media queries are evaluated for the media specification of the
+ * template only. The {@code @media} rules are evaluated for each variant separately.
+ *
+ * @author agent
+ */
+public class BatchRenderer
+{
+    private static Logger log = LoggerFactory.getLogger(BatchRenderer.class);
+
+    private final DOMAnalyzer template;
+    private final URL baseUrl;
+    private BrowserConfig config;
+    private int threads;
+
+
+    /**
+     * Creates a new batch renderer.
+     * @param template the analyzer of the document with all the style sheets already loaded
+     * (i.e. after calling {@link DOMAnalyzer#attributesToStyles()}, {@link DOMAnalyzer#getStyleSheets()}, etc.)
+     * @param baseUrl the document base URL
+     */
+    public BatchRenderer(DOMAnalyzer template, URL baseUrl)
+    {
+        this.template = template;
+        this.baseUrl = baseUrl;
+        this.config = new BrowserConfig();
+        this.config.setImageCache(new BoundedImageCache());
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Obtains the browser configuration shared by all the variants.
+     * @return the configuration
+     */
+    public BrowserConfig getConfig()
+    {
+        return config;
+    }
+
+    /**
+     * Sets the browser configuration shared by all the variants. The configuration must not be
+     * modified while rendering. The default configuration uses a {@link BoundedImageCache} so that
+     * the images are shared among the variants; an image cache should be configured for the same
+     * purpose in the new configuration.
+     * @param config the new configuration
+     */
+    public void setConfig(BrowserConfig config)
+    {
+        this.config = config;
+    }
+
+    /**
+     * Obtains the number of worker threads used for processing the variants.
+     * @return the number of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Sets the number of worker threads used for processing the variants. Default is the number
+     * of available processors.
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Renders the document for all the given media specifications. The canvas size of each variant
+     * corresponds to the width and height of the media specification.
+     * @param media the list of media specifications
+     * @return the list of engines containing the layout and the rendered images of the individual
+     * variants in the same order as the media specifications
+     */
+    public List<GraphicsEngine> render(List<MediaSpec> media)
+    {
+        final List<StyleSheet> sheets = template.getSharedStyleSheets();
+        final Object domLock = new Object();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, media.size())), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "cssbox-batch");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            final List<Future<GraphicsEngine>> tasks = new ArrayList<>(media.size());
+            for (final MediaSpec spec : media)
+            {
+                tasks.add(executor.submit(new Callable<GraphicsEngine>() {
+                    @Override
+                    public GraphicsEngine call() throws Exception
+                    {
+                        return renderVariant(spec, sheets, domLock);
+                    }
+                }));
+            }
+            final List<GraphicsEngine> ret = new ArrayList<>(media.size());
+            for (Future<GraphicsEngine> task : tasks)
+                ret.add(task.get());
+            return ret;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            else
+                throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the engine used for rendering a single variant. The default implementation creates
+     * a {@link GraphicsEngine} with the automatic media update switched off. This may be overriden
+     * in order to configure the engines.
+     * @param decoder the analyzer of the variant
+     * @param media the media specification of the variant
+     * @return the new engine
+     */
+    protected GraphicsEngine createEngine(DOMAnalyzer decoder, MediaSpec media)
+    {
+        GraphicsEngine engine = new GraphicsEngine(decoder.getRoot(), decoder, baseUrl);
+        engine.setAutoMediaUpdate(false); //we have a correct media specification, do not update
+        return engine;
+    }
+
+    private GraphicsEngine renderVariant(MediaSpec spec, List<StyleSheet> sheets, Object domLock)
+    {
+        final Dimension dim = new Dimension(spec.getWidth(), spec.getHeight());
+        final GraphicsEngine engine;
+        synchronized (domLock)
+        {
+            log.debug("Creating the box tree for {}x{}", dim.width, dim.height);
+            //a private copy of the document that may be accessed during the layout without locking
+            final Document doc = (Document) template.getRoot().getOwnerDocument().cloneNode(true);
+            final DOMAnalyzer decoder = new DOMAnalyzer(doc, baseUrl);
+            decoder.setStyleSheetCache(config.getStyleSheetCache());
+            decoder.setMediaSpec(spec);
+            for (StyleSheet sheet : sheets)
+                decoder.addStyleSheet(sheet);
+            decoder.addStyleSheet(decoder.getInlineStyleSheet(doc.getDocumentElement())); //bound to the elements of the copy
+            engine = createEngine(decoder, spec);
+            engine.setConfig(config);
+            engine.createBoxTree(dim, new Rectangle(dim));
+        }
+        log.debug("Layout for {}x{}", dim.width, dim.height);
+        engine.layoutBoxTree(dim, true);
+        return engine;
+    }
+
+}
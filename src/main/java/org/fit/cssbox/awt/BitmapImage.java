@@ -53,6 +53,19 @@ public class BitmapImage implements ContentImage
         return bufferedImage;
     }
 
+    /**
+     * Obtains the image for being drawn in the given size. The returned image may have a lower
+     * resolution than the intrinsic size of the image when it is sufficient for the target size.
+     * The default implementation always returns the full resolution image.
+     * @param targetWidth the width of the drawn image in pixels
+     * @param targetHeight the height of the drawn image in pixels
+     * @return the buffered image
+     */
+    public BufferedImage getBufferedImage(float targetWidth, float targetHeight)
+    {
+        return getBufferedImage();
+    }
+
     @Override
     public float getWidth()
     {
@@ -137,6 +137,31 @@ public class BrowserCanvas extends JPanel
                 new Rectangle(visibleRect.x, visibleRect.y, visibleRect.width, visibleRect.height));
     }
     
+    /**
+     * Recomputes the document layout for a new canvas and viewport size (e.g. when the canvas is resized)
+     * reusing the existing box tree when possible. See {@link org.fit.cssbox.layout.Engine#relayout(Dimension, Rectangle, boolean)}.
+     * @param dim the new total canvas size 
+     * @param visibleRect the new viewport (the visible area) size and position
+     */
+    public void relayout(Dimension dim, Rectangle visibleRect)
+    {
+        engine.relayout(dim, visibleRect);
+        setPreferredSize(new java.awt.Dimension(engine.getImage().getWidth(), engine.getImage().getHeight()));
+        revalidate();
+    }
+    
+    /**
+     * Recomputes the document layout for a new canvas and viewport size (e.g. when the canvas is resized)
+     * reusing the existing box tree when possible.
+     * @param dim the new total canvas size 
+     * @param visibleRect the new viewport (the visible area) size and position
+     */
+    public void relayout(java.awt.Dimension dim, java.awt.Rectangle visibleRect)
+    {
+        relayout(new Dimension(dim.width, dim.height),
+                new Rectangle(visibleRect.x, visibleRect.y, visibleRect.width, visibleRect.height));
+    }
+    
     /**
      * Redraws all the rendered boxes.
      */
@@ -0,0 +1,173 @@
+/*
+ * FontMeasure.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:21:53 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.fit.cssbox.layout.StringWidthCache;
+
+/**
+ * Text measurement for a single AWT font and font rendering context. For the fonts without any
+ * layout attributes (kerning, ligatures, tracking) and integer metrics, the widths of strings consisting
+ * of the common characters are computed as the sums of pre-computed character advances. Other strings
+ * are measured exactly using {@link Font#getStringBounds(String, FontRenderContext)}.
+ *
+ * The instances are interned so that the same instance is returned for the same font instance and
+ * equal rendering contexts. Therefore, the instances may be used directly as font keys in
+ * {@link StringWidthCache}. The fonts are compared by identity because the web fonts derived from
+ * different font files may be equal according to {@link Font#equals(Object)} when they have the same
+ * name; the fonts are interned by {@link FontRegistry}.
+ *
+ * @author agent
+ */
+public class FontMeasure implements StringWidthCache.Measure
+{
+    /** The first character covered by the advance table */
+    private static final char TABLE_START = 0x20;
+    /** The first character after the end of the advance table (Basic Latin to Latin Extended-B) */
+    private static final char TABLE_END = 0x250;
+    /** Maximal number of the interned instances */
+    private static final int MAX_INSTANCES = 512;
+
+    private static final ConcurrentHashMap<Key, FontMeasure> instances = new ConcurrentHashMap<>();
+
+    private final Font font;
+    private final FontRenderContext frc;
+    /** Character advances; NaN for the characters not measured yet. {@code null} when not applicable. */
+    private final float[] advances;
+
+
+    private FontMeasure(Font font, FontRenderContext frc)
+    {
+        this.font = font;
+        this.frc = frc;
+        if (font.hasLayoutAttributes() || frc.usesFractionalMetrics())
+            advances = null; //the string width is not exactly the sum of character widths
+        else
+        {
+            advances = new float[TABLE_END - TABLE_START];
+            Arrays.fill(advances, Float.NaN);
+        }
+    }
+
+    /**
+     * Obtains the measure for the given font and rendering context.
+     * @param font the font
+     * @param frc the font rendering context
+     * @return the measure instance
+     */
+    public static FontMeasure forFont(Font font, FontRenderContext frc)
+    {
+        final Key key = new Key(font, frc);
+        FontMeasure ret = instances.get(key);
+        if (ret == null)
+        {
+            if (instances.size() >= MAX_INSTANCES)
+                instances.clear(); //the set of fonts used is usually small; just start over
+            ret = new FontMeasure(font, frc);
+            final FontMeasure prev = instances.putIfAbsent(key, ret);
+            if (prev != null)
+                ret = prev;
+        }
+        return ret;
+    }
+
+    public Font getFont()
+    {
+        return font;
+    }
+
+    public FontRenderContext getFontRenderContext()
+    {
+        return frc;
+    }
+
+    /**
+     * Computes the exact width of a string using AWT.
+     */
+    @Override
+    public float stringWidth(String text)
+    {
+        return (float) font.getStringBounds(text, frc).getWidth();
+    }
+
+    /**
+     * Computes the width of a string from the character advance table.
+     * @param text the string to be measured
+     * @return the string width or -1 when the width cannot be obtained from the advance table
+     * (the font has some layout attributes or the string contains characters outside of the table)
+     */
+    public float tableWidth(String text)
+    {
+        if (advances == null)
+            return -1;
+        double ret = 0;
+        final int len = text.length();
+        for (int i = 0; i < len; i++)
+        {
+            final char ch = text.charAt(i);
+            if (ch < TABLE_START || ch >= TABLE_END)
+                return -1;
+            float adv = advances[ch - TABLE_START];
+            if (Float.isNaN(adv))
+            {
+                adv = (float) font.getStringBounds(String.valueOf(ch), frc).getWidth();
+                advances[ch - TABLE_START] = adv; //races are harmless here, the value is always the same
+            }
+            ret += adv;
+        }
+        return (float) ret;
+    }
+
+    //=========================================================================
+
+    private static final class Key
+    {
+        private final Font font;
+        private final FontRenderContext frc;
+        private final int hash;
+
+        public Key(Font font, FontRenderContext frc)
+        {
+            this.font = font;
+            this.frc = frc;
+            this.hash = 31 * System.identityHashCode(font) + frc.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            final Key other = (Key) obj;
+            return font == other.font && frc.equals(other.frc);
+        }
+    }
+
+}
@@ -0,0 +1,317 @@
+/*
+ * FontRegistry.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:41:41 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.fit.cssbox.css.CSSUnits;
+
+/**
+ * A process-wide registry of the resolved fonts and their metrics shared by all the visual contexts
+ * and engines. It provides
+ * <ul>
+ * <li>a case-insensitive index of the installed font families that is built on the first request;
+ * the fonts registered in the graphics environment later are not included,</li>
+ * <li>interned fonts for the given family, size, style, letter spacing and font attributes,</li>
+ * <li>interned font metrics (including the ex and ch sizes and the text measurement) for the given
+ * font instance and rendering context.</li>
+ * </ul>
+ * The metrics are bound to the font instances rather than to equal fonts: the web fonts loaded from
+ * different files are equal according to {@link Font#equals(Object)} when they have the same name.
+ * The interned fonts are distinguished by their family names that are unique for the web fonts.
+ *
+ * @author agent
+ */
+public class FontRegistry
+{
+    /** Maximal number of the interned fonts and metrics; the caches start over when exceeded */
+    private static final int MAX_ENTRIES = 1024;
+
+    /** Rendering context used for computing the ex size */
+    private static final FontRenderContext EX_FRC = new FontRenderContext(null, false, false);
+
+    private static final FontRegistry instance = new FontRegistry();
+
+    /** Installed font families indexed by their lower-case names */
+    private volatile Map<String, String> families;
+    /** Installed font family names as returned by the graphics environment */
+    private volatile String[] familyNames;
+
+    private final ConcurrentHashMap<FontKey, Font> fonts;
+    private final ConcurrentHashMap<MetricsKey, Metrics> metrics;
+
+
+    /**
+     * Obtains the shared registry instance.
+     * @return the registry
+     */
+    public static FontRegistry getInstance()
+    {
+        return instance;
+    }
+
+    private FontRegistry()
+    {
+        fonts = new ConcurrentHashMap<>();
+        metrics = new ConcurrentHashMap<>();
+    }
+
+    //=========================================================================
+
+    /**
+     * Finds an installed font family by its name ignoring the case.
+     * @param family the family name
+     * @return the exact name of the installed family or {@code null} when not installed
+     */
+    public String findFamily(String family)
+    {
+        return getFamilyIndex().get(family.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Obtains the names of all the installed font families.
+     * @return the array of family names. The array must not be modified.
+     */
+    public String[] getFamilyNames()
+    {
+        getFamilyIndex();
+        return familyNames;
+    }
+
+    private Map<String, String> getFamilyIndex()
+    {
+        Map<String, String> ret = families;
+        if (ret == null)
+        {
+            synchronized (this)
+            {
+                ret = families;
+                if (ret == null)
+                {
+                    final String[] avail = GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
+                    final Map<String, String> index = new HashMap<>(avail.length * 2);
+                    for (String name : avail)
+                        index.putIfAbsent(name.toLowerCase(Locale.ROOT), name); //keep the first one as the linear scan did
+                    familyNames = avail;
+                    families = ret = index;
+                }
+            }
+        }
+        return ret;
+    }
+
+    //=========================================================================
+
+    /**
+     * Obtains an interned font for the given parameters. When the font has not been created yet,
+     * it is created using the given factory.
+     * @param owner the class responsible for creating the font (e.g. a visual context implementation)
+     * @param family the exact font family name
+     * @param size the font size
+     * @param style the AWT font style ({@link Font#PLAIN}, {@link Font#BOLD}, {@link Font#ITALIC})
+     * @param spacing the letter spacing
+     * @param attributes the additional font attributes used for creating the font
+     * @param factory the factory used for creating the font when not available
+     * @return the font
+     */
+    public Font getFont(Class<?> owner, String family, int size, int style, float spacing,
+            Map<TextAttribute, Object> attributes, Supplier<Font> factory)
+    {
+        final FontKey key = new FontKey(owner, family, size, style, spacing, attributes);
+        Font ret = fonts.get(key);
+        if (ret == null)
+        {
+            if (fonts.size() >= MAX_ENTRIES)
+                fonts.clear();
+            ret = factory.get();
+            final Font prev = fonts.putIfAbsent(key, ret);
+            if (prev != null)
+                ret = prev;
+        }
+        return ret;
+    }
+
+    /**
+     * Obtains the metrics of the given font used in the given graphics context.
+     * @param font the font; the metrics are shared only for the same font instance
+     * @param g the graphics context whose rendering settings are used
+     * @return the font metrics
+     */
+    public Metrics getMetrics(Font font, Graphics2D g)
+    {
+        final FontRenderContext frc = g.getFontRenderContext();
+        final MetricsKey key = new MetricsKey(font, frc);
+        Metrics ret = metrics.get(key);
+        if (ret == null)
+        {
+            if (metrics.size() >= MAX_ENTRIES)
+                metrics.clear();
+            ret = new Metrics(font, g.getFontMetrics(font), frc);
+            final Metrics prev = metrics.putIfAbsent(key, ret);
+            if (prev != null)
+                ret = prev;
+        }
+        return ret;
+    }
+
+    //=========================================================================
+
+    /**
+     * The metrics of a font computed for a rendering context.
+     */
+    public static class Metrics
+    {
+        private final FontMetrics fontMetrics;
+        private final FontMeasure measure;
+        private final float ex;
+        private final float ch;
+
+        private Metrics(Font font, FontMetrics fm, FontRenderContext frc)
+        {
+            fontMetrics = fm;
+            measure = FontMeasure.forFont(font, frc);
+            final TextLayout layout = new TextLayout("x", font, EX_FRC);
+            ex = CSSUnits.points((float) layout.getBounds().getHeight());
+            ch = CSSUnits.points(fm.charWidth('0'));
+        }
+
+        public FontMetrics getFontMetrics()
+        {
+            return fontMetrics;
+        }
+
+        /**
+         * Obtains the text measurement for the font.
+         * @return the measure
+         */
+        public FontMeasure getMeasure()
+        {
+            return measure;
+        }
+
+        /**
+         * Obtains the 1ex length.
+         * @return the ex size in points
+         */
+        public float getEx()
+        {
+            return ex;
+        }
+
+        /**
+         * Obtains the 1ch length.
+         * @return the ch size in points
+         */
+        public float getCh()
+        {
+            return ch;
+        }
+    }
+
+    //=========================================================================
+
+    private static class FontKey
+    {
+        private final Class<?> owner;
+        private final String family;
+        private final int size;
+        private final int style;
+        private final float spacing;
+        private final Map<TextAttribute, Object> attributes;
+        private final int hash;
+
+        public FontKey(Class<?> owner, String family, int size, int style, float spacing, Map<TextAttribute, Object> attributes)
+        {
+            this.owner = owner;
+            this.family = family;
+            this.size = size;
+            this.style = style;
+            this.spacing = spacing;
+            //the attribute map may be modified later, use a snapshot
+            this.attributes = attributes.isEmpty() ? Collections.<TextAttribute, Object>emptyMap() : new HashMap<>(attributes);
+            int h = owner.hashCode();
+            h = 31 * h + family.hashCode();
+            h = 31 * h + size;
+            h = 31 * h + style;
+            h = 31 * h + Float.floatToIntBits(spacing);
+            h = 31 * h + this.attributes.hashCode();
+            hash = h;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) return true;
+            if (!(obj instanceof FontKey)) return false;
+            final FontKey other = (FontKey) obj;
+            return hash == other.hash && owner == other.owner && size == other.size && style == other.style
+                    && Float.floatToIntBits(spacing) == Float.floatToIntBits(other.spacing)
+                    && family.equals(other.family) && attributes.equals(other.attributes);
+        }
+    }
+
+    private static class MetricsKey
+    {
+        private final Font font;
+        private final FontRenderContext frc;
+        private final int hash;
+
+        public MetricsKey(Font font, FontRenderContext frc)
+        {
+            this.font = font;
+            this.frc = frc;
+            hash = 31 * System.identityHashCode(font) + frc.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) return true;
+            if (!(obj instanceof MetricsKey)) return false;
+            final MetricsKey other = (MetricsKey) obj;
+            return hash == other.hash && font == other.font && frc.equals(other.frc);
+        }
+    }
+
+}
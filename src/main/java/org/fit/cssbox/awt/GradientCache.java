@@ -0,0 +1,267 @@
+/*
+ * GradientCache.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 18:06:55 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint;
+import java.awt.RadialGradientPaint;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A process-wide cache of the rendered gradient tiles shared by all the renderers. The tiles are
+ * identified by a canonical form of the gradient paint (the geometry, the stops, the cycle method,
+ * the color interpolation space and the transformation) and the tile size; therefore, the same
+ * gradient used by many elements or painted repeatedly is rendered only once. The total size of
+ * the cached tiles is limited; the least recently used tiles are evicted when the limit is exceeded.
+ * The cached tiles are shared and they must not be modified.
+ *
+ * @author agent
+ */
+public class GradientCache
+{
+    /** Default maximal total number of pixels of the cached tiles (4 Mpx, i.e. 16 MB) */
+    public static final long DEFAULT_MAX_PIXELS = 4L * 1024 * 1024;
+
+    private static final GradientCache instance = new GradientCache(DEFAULT_MAX_PIXELS);
+
+    private final long maxPixels;
+    private final LinkedHashMap<Key, BufferedImage> tiles;
+    private long currentPixels;
+    private long hits;
+    private long misses;
+
+
+    /**
+     * Obtains the shared cache instance.
+     * @return the cache
+     */
+    public static GradientCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Creates a new cache with the given size limit.
+     * @param maxPixels the maximal total number of pixels of the cached tiles
+     */
+    public GradientCache(long maxPixels)
+    {
+        this.maxPixels = maxPixels;
+        tiles = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    /**
+     * Checks whether a tile of the given size may be cached. Large tiles (e.g. gradients covering
+     * a whole page) are not cached; they should be painted directly.
+     * @param width the tile width
+     * @param height the tile height
+     * @return {@code true} when the tile may be cached
+     */
+    public boolean accepts(int width, int height)
+    {
+        return width > 0 && height > 0 && (long) width * height <= maxPixels / 16;
+    }
+
+    /**
+     * Obtains a tile of the given size filled with the given gradient paint. The tile is taken from
+     * the cache when available; otherwise, it is rendered and stored in the cache when its size
+     * is acceptable.
+     * @param paint the gradient paint
+     * @param width the tile width
+     * @param height the tile height
+     * @return the rendered tile that must not be modified
+     */
+    public BufferedImage getTile(MultipleGradientPaint paint, int width, int height)
+    {
+        final Key key = accepts(width, height) ? new Key(paint, width, height) : null;
+        if (key != null)
+        {
+            synchronized (this)
+            {
+                final BufferedImage ret = tiles.get(key);
+                if (ret != null)
+                {
+                    hits++;
+                    return ret;
+                }
+                misses++;
+            }
+        }
+        final BufferedImage tile = renderTile(paint, width, height);
+        if (key != null)
+            put(key, tile);
+        return tile;
+    }
+
+    /**
+     * Removes all the cached tiles.
+     */
+    public synchronized void clear()
+    {
+        tiles.clear();
+        currentPixels = 0;
+    }
+
+    /**
+     * Obtains the current total number of pixels of the cached tiles.
+     * @return the number of pixels
+     */
+    public synchronized long getCurrentPixels()
+    {
+        return currentPixels;
+    }
+
+    /**
+     * Obtains the number of the tiles obtained from the cache.
+     * @return the hit count
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Obtains the number of the tiles that had to be rendered.
+     * @return the miss count
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    //=========================================================================
+
+    private synchronized void put(Key key, BufferedImage tile)
+    {
+        final BufferedImage prev = tiles.put(key, tile);
+        if (prev != null)
+            currentPixels -= (long) prev.getWidth() * prev.getHeight();
+        currentPixels += (long) tile.getWidth() * tile.getHeight();
+        Iterator<BufferedImage> it = tiles.values().iterator();
+        while (currentPixels > maxPixels && it.hasNext())
+        {
+            final BufferedImage eldest = it.next();
+            it.remove();
+            currentPixels -= (long) eldest.getWidth() * eldest.getHeight();
+        }
+    }
+
+    private static BufferedImage renderTile(MultipleGradientPaint paint, int width, int height)
+    {
+        final BufferedImage ret = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB_PRE);
+        final Graphics2D g = ret.createGraphics();
+        g.setPaint(paint);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return ret;
+    }
+
+    /**
+     * The canonical form of a gradient tile.
+     */
+    private static class Key
+    {
+        private final int type;
+        private final float[] geometry;
+        private final double[] transform;
+        private final float[] fractions;
+        private final int[] colors;
+        private final int cycle;
+        private final int colorSpace;
+        private final int width;
+        private final int height;
+        private final int hash;
+
+        public Key(MultipleGradientPaint paint, int width, int height)
+        {
+            if (paint instanceof LinearGradientPaint)
+            {
+                final LinearGradientPaint lp = (LinearGradientPaint) paint;
+                type = 1;
+                geometry = points(lp.getStartPoint(), lp.getEndPoint(), 0);
+            }
+            else if (paint instanceof RadialGradientPaint)
+            {
+                final RadialGradientPaint rp = (RadialGradientPaint) paint;
+                type = 2;
+                geometry = points(rp.getCenterPoint(), rp.getFocusPoint(), rp.getRadius());
+            }
+            else
+            {
+                type = 0;
+                geometry = new float[0];
+            }
+            transform = new double[6];
+            paint.getTransform().getMatrix(transform);
+            fractions = paint.getFractions();
+            final Color[] clrs = paint.getColors();
+            colors = new int[clrs.length];
+            for (int i = 0; i < clrs.length; i++)
+                colors[i] = clrs[i].getRGB();
+            cycle = paint.getCycleMethod().ordinal();
+            colorSpace = paint.getColorSpace().ordinal();
+            this.width = width;
+            this.height = height;
+            int h = type;
+            h = 31 * h + Arrays.hashCode(geometry);
+            h = 31 * h + Arrays.hashCode(transform);
+            h = 31 * h + Arrays.hashCode(fractions);
+            h = 31 * h + Arrays.hashCode(colors);
+            h = 31 * h + cycle;
+            h = 31 * h + colorSpace;
+            h = 31 * h + width;
+            h = 31 * h + height;
+            hash = h;
+        }
+
+        private static float[] points(Point2D p1, Point2D p2, float extra)
+        {
+            return new float[] {(float) p1.getX(), (float) p1.getY(), (float) p2.getX(), (float) p2.getY(), extra};
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            final Key other = (Key) obj;
+            return hash == other.hash && type == other.type && cycle == other.cycle
+                    && colorSpace == other.colorSpace
+                    && width == other.width && height == other.height
+                    && Arrays.equals(geometry, other.geometry)
+                    && Arrays.equals(transform, other.transform)
+                    && Arrays.equals(fractions, other.fractions)
+                    && Arrays.equals(colors, other.colors);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * GraphicsBandRenderer.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:29:53 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+
+import org.fit.cssbox.layout.Box;
+import org.fit.cssbox.layout.ElementBox;
+import org.fit.cssbox.layout.Rectangle;
+import org.fit.cssbox.layout.ReplacedBox;
+import org.fit.cssbox.layout.TextBox;
+
+/**
+ * A graphics renderer that paints a single horizontal band of the page. The graphics context
+ * is expected to be limited to the band (e.g. a graphics of a sub-image of the page image translated
+ * to the page coordinates). The boxes whose absolute bounds do not intersect the band are skipped
+ * unless a transformation is applied to them. Painting the remaining boxes is the same as in
+ * {@link GraphicsRenderer} so that the resulting pixels are identical.
+ *
+ * @author agent
+ */
+public class GraphicsBandRenderer extends GraphicsRenderer
+{
+    /** Extra space around the boxes for the parts painted outside of their bounds (e.g. rounded strokes) */
+    private static final float BOX_MARGIN = 2;
+
+    private final float bandTop;
+    private final float bandBottom;
+    private final AffineTransform baseTransform;
+
+
+    /**
+     * Constructs a renderer for the given band.
+     * @param g The graphics context used for painting the band. The coordinates must correspond to the page coordinates.
+     * @param bandTop The top y coordinate of the band (inclusive)
+     * @param bandBottom The bottom y coordinate of the band (exclusive)
+     */
+    public GraphicsBandRenderer(Graphics2D g, float bandTop, float bandBottom)
+    {
+        super(g);
+        this.bandTop = bandTop;
+        this.bandBottom = bandBottom;
+        this.baseTransform = g.getTransform();
+    }
+
+    public float getBandTop()
+    {
+        return bandTop;
+    }
+
+    public float getBandBottom()
+    {
+        return bandBottom;
+    }
+
+    @Override
+    public void renderElementBackground(ElementBox elem)
+    {
+        if (intersectsBand(elem, BOX_MARGIN) || Transform.createTransform(elem) != null)
+            super.renderElementBackground(elem);
+    }
+
+    @Override
+    public void renderTextContent(TextBox text)
+    {
+        //the glyphs may exceed the line box
+        if (intersectsBand(text, BOX_MARGIN + 2 * text.getVisualContext().getEm()))
+            super.renderTextContent(text);
+    }
+
+    @Override
+    public void renderReplacedContent(ReplacedBox box)
+    {
+        if (!(box instanceof ElementBox)
+                || intersectsBand((ElementBox) box, BOX_MARGIN)
+                || Transform.createTransform((ElementBox) box) != null)
+            super.renderReplacedContent(box);
+    }
+
+    /**
+     * Checks whether the box painted with the given margin may intersect the band. When a transformation
+     * is currently applied, the box is always considered to be intersecting.
+     * @param box the box to check
+     * @param margin the margin around the box bounds
+     * @return {@code true} when the box may be visible in the band
+     */
+    protected boolean intersectsBand(Box box, float margin)
+    {
+        if (!g.getTransform().equals(baseTransform))
+            return true; //transformed contents, the box position is not known
+        final Rectangle b = box.getAbsoluteBounds();
+        return b.y - margin < bandBottom && b.y + b.height + margin > bandTop;
+    }
+
+}
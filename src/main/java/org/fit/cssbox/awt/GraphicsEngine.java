@@ -20,16 +20,32 @@
 package org.fit.cssbox.awt;
 
 import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.RenderingHints;
 import java.awt.font.TextAttribute;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.fit.cssbox.css.DOMAnalyzer;
 import org.fit.cssbox.css.FontTable;
 import org.fit.cssbox.layout.BrowserConfig;
 import org.fit.cssbox.layout.Dimension;
 import org.fit.cssbox.layout.Engine;
+import org.fit.cssbox.layout.PageSpec;
+import org.fit.cssbox.layout.Pagination;
+import org.fit.cssbox.layout.Rectangle;
 import org.fit.cssbox.layout.Viewport;
 import org.fit.cssbox.layout.VisualContext;
 import org.fit.cssbox.render.BoxRenderer;
@@ -49,6 +65,17 @@ public class GraphicsEngine extends Engine
     
     boolean useFractionalMetrics = false;
     boolean useKerning = true;
+    int renderThreads = 1;
+    int renderBandHeight = 512;
+    boolean stripOutput = false;
+    int stripHeight = 256;
+    
+    /** The total size of the rendered page */
+    private int pageWidth;
+    private int pageHeight;
+    
+    /** The web fonts used by the document */
+    private final WebFontRegistry.Scope webFonts = new WebFontRegistry.Scope();
 
     
     /** 
@@ -148,6 +175,206 @@ public class GraphicsEngine extends Engine
         this.useKerning = useKerning;
     }
 
+    /**
+     * Obtains the number of threads used for painting the page image.
+     * @return the number of threads
+     */
+    public int getRenderThreads()
+    {
+        return renderThreads;
+    }
+
+    /**
+     * Sets the number of threads used for painting the page image. When more than one thread is used,
+     * the image is split to horizontal bands (see {@link #setRenderBandHeight(int)}) that are painted
+     * in parallel. The resulting image is identical to the single-threaded painting. Default is 1.
+     * @param renderThreads the number of threads
+     */
+    public void setRenderThreads(int renderThreads)
+    {
+        this.renderThreads = Math.max(1, renderThreads);
+    }
+
+    /**
+     * Obtains the height of the bands used for the parallel painting.
+     * @return the band height in pixels
+     */
+    public int getRenderBandHeight()
+    {
+        return renderBandHeight;
+    }
+
+    /**
+     * Sets the height of the horizontal bands painted in parallel when more than one render thread
+     * is used. Default is 512 pixels.
+     * @param renderBandHeight the band height in pixels
+     */
+    public void setRenderBandHeight(int renderBandHeight)
+    {
+        this.renderBandHeight = Math.max(1, renderBandHeight);
+    }
+
+    /**
+     * Tests if the strip output mode is used.
+     * @return {@code true} when yes
+     */
+    public boolean isStripOutput()
+    {
+        return stripOutput;
+    }
+
+    /**
+     * Switches the strip output mode on or off. In the strip output mode, the page image is not
+     * allocated and it is not painted when the layout is created. The page may be then written
+     * using {@link #writePng(OutputStream)} that paints the page by horizontal strips of the
+     * given height (see {@link #setStripHeight(int)}) and encodes each strip immediately. The memory used
+     * does not depend on the page height then. The image obtained by {@link #getImage()} only
+     * contains the last painted strip in this mode. Default is off.
+     * @param stripOutput {@code true} for using the strip output mode
+     */
+    public void setStripOutput(boolean stripOutput)
+    {
+        this.stripOutput = stripOutput;
+    }
+
+    /**
+     * Obtains the height of the strips used in the strip output mode.
+     * @return the strip height in pixels
+     */
+    public int getStripHeight()
+    {
+        return stripHeight;
+    }
+
+    /**
+     * Sets the height of the strips used in the strip output mode. Default is 256 pixels.
+     * @param stripHeight the strip height in pixels
+     */
+    public void setStripHeight(int stripHeight)
+    {
+        this.stripHeight = Math.max(1, stripHeight);
+    }
+
+    /**
+     * Writes the rendered page to the given output stream in the PNG format. In the strip output mode,
+     * the page is painted by strips and each strip is encoded before the next one is painted.
+     * Otherwise, the already painted page image is encoded. The layout must be already created.
+     * @param out the output stream. The stream is not closed.
+     * @throws IOException
+     */
+    public void writePng(OutputStream out) throws IOException
+    {
+        if (stripOutput)
+        {
+            try (StreamingPngEncoder enc = new StreamingPngEncoder(out, pageWidth, pageHeight, false))
+            {
+                for (int top = 0; top < pageHeight; top += img.getHeight())
+                {
+                    final int bottom = Math.min(pageHeight, top + img.getHeight());
+                    renderStrip(getViewport(), top, bottom);
+                    enc.writeRows(img, 0, bottom - top);
+                }
+                enc.finish();
+            }
+        }
+        else
+        {
+            try (StreamingPngEncoder enc = new StreamingPngEncoder(out, img.getWidth(), img.getHeight(),
+                    img.getColorModel().hasAlpha()))
+            {
+                enc.writeRows(img, 0, img.getHeight());
+                enc.finish();
+            }
+        }
+    }
+    
+    /**
+     * Writes the rendered page to the given channel in the PNG format. See {@link #writePng(OutputStream)}.
+     * @param channel the output channel. The channel is not closed.
+     * @throws IOException
+     */
+    public void writePng(WritableByteChannel channel) throws IOException
+    {
+        writePng(Channels.newOutputStream(channel));
+    }
+    
+    /**
+     * Renders a single page of the paginated layout created by {@link #createPagedLayout(PageSpec)}.
+     * Only the boxes that may be visible on the page are painted.
+     * @param index the page index starting with 0
+     * @return a new image containing the rendered page
+     * @throws IndexOutOfBoundsException when the page does not exist
+     */
+    public BufferedImage renderPage(int index)
+    {
+        final PageSpec page = getPageSpec();
+        if (page == null || getPagination() == null)
+            throw new IllegalStateException("No paginated layout has been created");
+        getPagination().checkIndex(index);
+        final BufferedImage pimg = new BufferedImage(Math.round(page.getWidth()), Math.round(page.getHeight()),
+                BufferedImage.TYPE_INT_RGB);
+        final Graphics2D pg = pimg.createGraphics();
+        try {
+            setupGraphics(pg);
+            renderPage(index, pg);
+        } finally {
+            pg.dispose();
+        }
+        return pimg;
+    }
+    
+    /**
+     * Renders a single page of the paginated layout created by {@link #createPagedLayout(PageSpec)}
+     * to the given graphics (e.g. a printer graphics). The page origin corresponds to the origin
+     * of the graphics; the page margins are left blank.
+     * @param index the page index starting with 0
+     * @param g the graphics to be used for painting. It is not modified.
+     * @throws IndexOutOfBoundsException when the page does not exist
+     */
+    public void renderPage(int index, Graphics2D g)
+    {
+        final PageSpec page = getPageSpec();
+        final Pagination pages = getPagination();
+        if (page == null || pages == null)
+            throw new IllegalStateException("No paginated layout has been created");
+        pages.checkIndex(index);
+        final Viewport viewport = getViewport();
+        final float top = pages.getPageTop(index);
+        final float bottom = pages.getPageBottom(index);
+        final Graphics2D pg = (Graphics2D) g.create();
+        try {
+            pg.setColor(java.awt.Color.WHITE);
+            pg.fill(new Rectangle2D.Float(0, 0, page.getWidth(), page.getHeight()));
+            pg.clip(new Rectangle2D.Float(page.getMargin().left, page.getMargin().top,
+                    page.getContentWidth(), bottom - top));
+            pg.translate(page.getMargin().left, page.getMargin().top - top);
+            GraphicsRenderer r = new GraphicsBandRenderer(pg, top, bottom);
+            r.init(viewport);
+            r.clearCanvas();
+            viewport.drawConcurrently(r, pages.getPageArea(index, viewport.getWidth()));
+            r.close();
+        } finally {
+            pg.dispose();
+        }
+    }
+    
+    /**
+     * Renders a single page of the paginated layout and writes it to the given output stream
+     * in the PNG format. Only a single page is kept in memory.
+     * @param index the page index starting with 0
+     * @param out the output stream. The stream is not closed.
+     * @throws IOException
+     */
+    public void writePagePng(int index, OutputStream out) throws IOException
+    {
+        final BufferedImage pimg = renderPage(index);
+        try (StreamingPngEncoder enc = new StreamingPngEncoder(out, pimg.getWidth(), pimg.getHeight(), false))
+        {
+            enc.writeRows(pimg, 0, pimg.getHeight());
+            enc.finish();
+        }
+    }
+    
     //==========================================================================================================
     
     /**
@@ -166,9 +393,13 @@ public class GraphicsEngine extends Engine
     @Override
     protected void initOutputMedia(float width, float height)
     {
+        pageWidth = (int) width;
+        pageHeight = (int) height;
         if (createImage)
         {
-            img = new BufferedImage((int) width, (int) height, BufferedImage.TYPE_INT_RGB);
+            //only a strip is allocated when the output is painted by strips or by pages later
+            final int imgHeight = (stripOutput || getPageSpec() != null) ? Math.min(pageHeight, stripHeight) : pageHeight;
+            img = new BufferedImage(pageWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
             ig = img.createGraphics();
             setupGraphics(ig);
         }
@@ -180,6 +411,9 @@ public class GraphicsEngine extends Engine
         GraphicsVisualContext ctx = new GraphicsVisualContext(ig, null, config, fontTable);
         if (useKerning)
             ctx.getDefaultFontAttributes().put(TextAttribute.KERNING, TextAttribute.KERNING_ON);
+        ctx.setWebFontScope(webFonts);
+        if (config.isLoadFonts() && config.getPrefetchFonts() && fontTable != null && !fontTable.isEmpty())
+            WebFontRegistry.getInstance().prefetch(getRootElement(), getDecoder(), fontTable, config); //load the used fonts in parallel before the layout
         return ctx;
     }
     
@@ -192,12 +426,121 @@ public class GraphicsEngine extends Engine
     @Override
     protected void renderViewport(Viewport viewport)
     {
-        // adds clearCanvas before rendering
-        GraphicsRenderer r = (GraphicsRenderer) getRenderer();
-        r.init(viewport);
-        r.clearCanvas();
-        viewport.draw(r);
-        r.close();
+        if (stripOutput)
+        {
+            //the page is painted by strips when written
+        }
+        else if (renderThreads > 1 && img != null && img.getHeight() > renderBandHeight
+                && ig.getTransform().isIdentity() && ig.getClip() == null)
+        {
+            renderViewportTiled(viewport);
+        }
+        else
+        {
+            // adds clearCanvas before rendering
+            GraphicsRenderer r = (GraphicsRenderer) getRenderer();
+            r.init(viewport);
+            r.clearCanvas();
+            viewport.draw(r);
+            r.close();
+        }
+    }
+    
+    @Override
+    protected void renderViewport(Viewport viewport, Rectangle area)
+    {
+        if (stripOutput)
+            return; //the page is painted by strips when written
+        final Shape oldclip = ig.getClip();
+        ig.clip(new Rectangle2D.Float(area.x, area.y, area.width, area.height));
+        try
+        {
+            GraphicsRenderer r = (GraphicsRenderer) getRenderer();
+            r.init(viewport);
+            r.clearCanvas();
+            viewport.draw(r, area);
+            r.close();
+        } finally {
+            ig.setClip(oldclip);
+        }
+    }
+    
+    /**
+     * Paints the viewport by horizontal bands in parallel. Each band is painted to a sub-image
+     * of the page image that shares the pixel data with the page image.
+     * @param viewport the viewport to be painted
+     */
+    protected void renderViewportTiled(Viewport viewport)
+    {
+        final int width = img.getWidth();
+        final int height = img.getHeight();
+        final int bands = (height + renderBandHeight - 1) / renderBandHeight;
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(renderThreads, bands), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "cssbox-render");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try
+        {
+            final List<Future<?>> tasks = new ArrayList<>(bands);
+            for (int i = 0; i < bands; i++)
+            {
+                final int top = i * renderBandHeight;
+                final int bottom = Math.min(height, top + renderBandHeight);
+                tasks.add(executor.submit(() -> renderBand(viewport, width, top, bottom)));
+            }
+            for (Future<?> task : tasks)
+                task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            else
+                throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Paints a horizontal strip of the page to the page image that is used as the strip buffer.
+     * @param viewport the viewport to be painted
+     * @param top the top y coordinate of the strip in the page
+     * @param bottom the bottom y coordinate of the strip in the page
+     */
+    protected void renderStrip(Viewport viewport, int top, int bottom)
+    {
+        paintBand(img.createGraphics(), viewport, top, bottom);
+    }
+    
+    private void renderBand(Viewport viewport, int width, int top, int bottom)
+    {
+        paintBand(img.getSubimage(0, top, width, bottom - top).createGraphics(), viewport, top, bottom);
+    }
+    
+    /**
+     * Paints a horizontal band of the page using a graphics whose origin corresponds to the band top.
+     * The graphics is disposed when finished.
+     */
+    private void paintBand(Graphics2D bg, Viewport viewport, int top, int bottom)
+    {
+        try
+        {
+            bg.setRenderingHints(ig.getRenderingHints());
+            bg.translate(0, -top);
+            GraphicsRenderer r = new GraphicsBandRenderer(bg, top, bottom);
+            r.init(viewport);
+            r.clearCanvas();
+            viewport.drawConcurrently(r, new Rectangle(0, top, img.getWidth(), bottom - top));
+            r.close();
+        } finally {
+            bg.dispose();
+        }
     }
     
 }
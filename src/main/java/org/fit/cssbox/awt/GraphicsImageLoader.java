@@ -20,6 +20,8 @@
 package org.fit.cssbox.awt;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -99,6 +101,8 @@ public class GraphicsImageLoader implements ImageLoader
      */
     public ContentImage loadImageFromSource(URL url)
     {
+        if (ctx.getConfig().getSubsampleImages())
+            return loadImageHeaderFromSource(url);
         ContentImage ret = null;
         try (DocumentSource imgsrc = ctx.getConfig().createDocumentSource(url))
         {
@@ -142,6 +146,71 @@ public class GraphicsImageLoader implements ImageLoader
         return ret;
     }
     
+    /**
+     * Loads the encoded image data from the given source URL and reads the intrinsic image size
+     * from the image header. The image pixels are not decoded; a {@link LazyBitmapImage} is
+     * created that decodes them when the image is drawn.
+     * 
+     * @param url the source URL
+     * @return the content image or {@code null} when the image could not be loaded or its header could not be read
+     */
+    public ContentImage loadImageHeaderFromSource(URL url)
+    {
+        ContentImage ret = null;
+        try (DocumentSource imgsrc = ctx.getConfig().createDocumentSource(url))
+        {
+            final byte[] data = readAll(imgsrc.getInputStream());
+            try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(data)))
+            {
+                Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+                if (!imageReaders.hasNext())
+                {
+                    log.warn("No image readers for URL: " + url);
+                }
+                else
+                {
+                    int width = -1;
+                    int height = -1;
+                    do
+                    {
+                        ImageReader currentImageReader = imageReaders.next();
+                        imageInputStream.seek(0);
+                        currentImageReader.setInput(imageInputStream);
+
+                        try
+                        {
+                            width = currentImageReader.getWidth(0);
+                            height = currentImageReader.getHeight(0);
+                        } catch (Exception e) {
+                            log.error("Image header decoding error: " + e.getMessage() + " with reader " + currentImageReader);
+                        } finally {
+                            currentImageReader.dispose();
+                        }
+                    }
+                    while ((width <= 0 || height <= 0) && imageReaders.hasNext());
+                    if (width > 0 && height > 0)
+                        ret = new LazyBitmapImage(url, data, width, height);
+                }
+            } catch (Exception e) {
+                log.error("Image decoding error: " + e.getMessage());
+            }
+        } catch (IOException e) {
+            log.error("Unable to get image from: " + url);
+            log.error(e.getMessage());
+        }
+        return ret;
+    }
+    
+    private byte[] readAll(InputStream is) throws IOException
+    {
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8192];
+        int n;
+        while ((n = is.read(chunk)) != -1)
+            buf.write(chunk, 0, n);
+        return buf.toByteArray();
+    }
+    
     private void observeLoadFailed(URL url)
     {
         final ContentObserver observer = ctx.getConfig().getContentObserver();
@@ -19,8 +19,10 @@
  */
 package org.fit.cssbox.awt;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Composite;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Shape;
@@ -30,6 +32,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.text.AttributedString;
 import java.util.HashMap;
 import java.util.Map;
@@ -216,8 +219,21 @@ public class GraphicsRenderer extends StructuredRenderer
             }
             
             //draw the background images
-            if (bg.getBackgroundImages() != null)
+            if (bg.getBackgroundImages() != null && canPaintBackgroundDirectly(g))
             {
+                final BackgroundPainter painter = new BackgroundPainter(elem, g);
+                for (int i = bg.getBackgroundImages().size() - 1; i >= 0; i--)
+                {
+                    BackgroundImage img = bg.getBackgroundImages().get(i);
+                    if (img instanceof BackgroundImageImage)
+                        painter.paintBackgroundImage((BackgroundImageImage) img);
+                    else if (img instanceof BackgroundImageGradient)
+                        painter.paintBackgroundImage((BackgroundImageGradient) img);
+                }
+            }
+            else if (bg.getBackgroundImages() != null)
+            {
+                //the images must be composed to a single bitmap first
                 final BackgroundBitmap bitmap = new BackgroundBitmap(elem);
                 for (int i = bg.getBackgroundImages().size() - 1; i >= 0; i--)
                 {
@@ -245,6 +261,21 @@ public class GraphicsRenderer extends StructuredRenderer
         g.setColor(color); //restore original color
     }
     
+    /**
+     * Checks whether the background images may be painted directly to the graphics one by one.
+     * This is not possible when a composite other than the plain source-over is used because the
+     * composite must be applied to the whole background at once.
+     * @param g the target graphics
+     * @return {@code true} when the background images may be painted directly
+     */
+    protected boolean canPaintBackgroundDirectly(Graphics2D g)
+    {
+        final Composite comp = g.getComposite();
+        return comp instanceof AlphaComposite
+                && ((AlphaComposite) comp).getRule() == AlphaComposite.SRC_OVER
+                && ((AlphaComposite) comp).getAlpha() == 1.0f;
+    }
+    
     protected void drawBorders(ElementBox elem, Graphics2D g, float bx1, float by1, float bx2, float by2)
     {
         LengthSet border = elem.getBorder();
@@ -458,7 +489,7 @@ public class GraphicsRenderer extends StructuredRenderer
             }
             else if (obj instanceof ReplacedText)
             {
-                ((ReplacedText) obj).getContentViewport().draw(this); //draw the contents using this renderer
+                ((ReplacedText) obj).getContentViewport().drawConcurrently(this); //draw the contents using this renderer in the current thread
             }
             
             g.setClip(oldclip);
@@ -475,11 +506,16 @@ public class GraphicsRenderer extends StructuredRenderer
             // update our configuration
             setupGraphics(g, (GraphicsVisualContext) img.getVisualContext());
 
+            // obtain the image in the resolution sufficient for the used size
+            final BitmapImage bitmap = (BitmapImage) img.getImage();
+            final BufferedImage image = bitmap.getBufferedImage(bounds.width, bounds.height);
+            final float sx = image.getWidth() / bitmap.getWidth();
+            final float sy = image.getHeight() / bitmap.getHeight();
             // draw image of the given size and position
             final AffineTransform tr = new AffineTransform();
             tr.translate(bounds.x, bounds.y);
-            tr.scale(bounds.width / img.getIntrinsicWidth(), bounds.height / img.getIntrinsicHeight());
-            g.drawImage(((BitmapImage) img.getImage()).getBufferedImage(), tr, null);
+            tr.scale(bounds.width / (img.getIntrinsicWidth() * sx), bounds.height / (img.getIntrinsicHeight() * sy));
+            g.drawImage(image, tr, null);
         }
         else
         {
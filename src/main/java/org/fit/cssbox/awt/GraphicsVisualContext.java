@@ -20,14 +20,10 @@
 package org.fit.cssbox.awt;
 
 import java.awt.Font;
-import java.awt.FontFormatException;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
-import java.awt.GraphicsEnvironment;
-import java.awt.font.FontRenderContext;
 import java.awt.font.LineMetrics;
 import java.awt.font.TextAttribute;
-import java.awt.font.TextLayout;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -38,10 +34,10 @@ import org.fit.cssbox.css.CSSUnits;
 import org.fit.cssbox.css.FontDecoder;
 import org.fit.cssbox.css.FontSpec;
 import org.fit.cssbox.css.FontTable;
-import org.fit.cssbox.io.DocumentSource;
 import org.fit.cssbox.layout.BrowserConfig;
 import org.fit.cssbox.layout.FontInfo;
 import org.fit.cssbox.layout.ImageLoader;
+import org.fit.cssbox.layout.StringWidthCache;
 import org.fit.cssbox.layout.VisualContext;
 import org.fit.net.DataURLHandler;
 
@@ -56,11 +52,16 @@ import cz.vutbr.web.css.TermURI;
  */
 public class GraphicsVisualContext extends VisualContext
 {
+    /** The initial font shared by all the contexts */
+    private static final Font DEFAULT_FONT = new Font(Font.SERIF, Font.PLAIN, (int) CSSUnits.medium_font);
+    
     private Graphics2D g;
     private Font font; //current font
     private FontMetrics fm; //current font metrics
     private float ex; // 1ex length in points
     private float ch; // 1ch length in points
+    private FontMeasure measure; //text measurement for the current font
+    private StringWidthCache widthCache; //shared text run width cache or null for exact measurement
     
     /** Default font attributes used when creating fonts */
     private HashMap<TextAttribute, Object> defaultFontAttributes;
@@ -68,6 +69,9 @@ public class GraphicsVisualContext extends VisualContext
     /** Used image loader instance */
     private ImageLoader imageLoader;
     
+    /** Web fonts used by the engine or {@code null} when not available */
+    private WebFontRegistry.Scope webFonts;
+    
 
     /**
      * Creates a new visual context for a AWT graphics context.
@@ -81,8 +85,10 @@ public class GraphicsVisualContext extends VisualContext
     {
         super(parent, config, fontTable);
         this.g = g;
-        font = new Font(Font.SERIF, Font.PLAIN, (int) CSSUnits.medium_font);
+        font = DEFAULT_FONT;
         defaultFontAttributes = new HashMap<>();
+        webFonts = (parent instanceof GraphicsVisualContext) ? ((GraphicsVisualContext) parent).webFonts : new WebFontRegistry.Scope();
+        widthCache = (config == null) ? null : config.getStringWidthCache();
         updateMetrics(g);
     }
 
@@ -102,12 +108,36 @@ public class GraphicsVisualContext extends VisualContext
         if (src instanceof GraphicsVisualContext)
         {
             font = ((GraphicsVisualContext) src).font;
+            fm = ((GraphicsVisualContext) src).fm;
+            measure = ((GraphicsVisualContext) src).measure;
             defaultFontAttributes = ((GraphicsVisualContext) src).defaultFontAttributes;
+            webFonts = ((GraphicsVisualContext) src).webFonts;
             ex = src.getEx();
             ch = src.getCh();
         }
     }
     
+    @Override
+    protected boolean hasSameState(VisualContext other)
+    {
+        if (super.hasSameState(other))
+        {
+            final GraphicsVisualContext o = (GraphicsVisualContext) other;
+            return g == o.g
+                    && widthCache == o.widthCache
+                    && defaultFontAttributes == o.defaultFontAttributes
+                    && font == o.font; //the fonts are interned; equal web fonts may differ
+        }
+        else
+            return false;
+    }
+    
+    @Override
+    protected int stateHashCode()
+    {
+        return 31 * super.stateHashCode() + System.identityHashCode(font);
+    }
+    
     //=========================================================================
     
     @Override
@@ -150,24 +180,19 @@ public class GraphicsVisualContext extends VisualContext
     }
      
     /**
-     * Updates the font metrics and the ex, and ch values. 
+     * Updates the font metrics and the ex, and ch values. The metrics are shared with all
+     * the contexts that use the same font (see {@link FontRegistry}).
      * @param g Graphics to be used for computing the font metrics 
      */
     private void updateMetrics(Graphics2D g)
     {
-        // create a working copy of the graphic context
-        final Graphics2D cg = (Graphics2D) g.create(); 
-        // set the graphics font to the current font
-        updateGraphics(cg);
-        // get the font metrics
-        fm = cg.getFontMetrics();
-        
+        final FontRegistry.Metrics metrics = FontRegistry.getInstance().getMetrics(font, g);
+        fm = metrics.getFontMetrics();
+        measure = metrics.getMeasure();
         //update the width units
         //em and rem are maintained by the parent class (VisualContext)
-        FontRenderContext frc = new FontRenderContext(null, false, false);
-        TextLayout layout = new TextLayout("x", font, frc);
-        ex = CSSUnits.points((float) layout.getBounds().getHeight());
-        ch = CSSUnits.points(fm.charWidth('0'));
+        ex = metrics.getEx();
+        ch = metrics.getCh();
     }
     
     @Override
@@ -175,11 +200,15 @@ public class GraphicsVisualContext extends VisualContext
     {
         if (text.isEmpty())
             return 0;
+        else if (widthCache == null)
+            return measure.stringWidth(text);
         else
         {
-            final Graphics2D cg = (Graphics2D) g.create(); 
-            updateGraphics(cg);
-            return (float) fm.getStringBounds(text, cg).getWidth();
+            final float w = measure.tableWidth(text);
+            if (w >= 0)
+                return w;
+            else
+                return widthCache.getWidth(measure, text, measure);
         }
     }
     
@@ -189,7 +218,7 @@ public class GraphicsVisualContext extends VisualContext
     public void setCurrentFont(String family, float size, CSSProperty.FontWeight weight, CSSProperty.FontStyle style, float spacing)
     {
         // AWT specifies the font sizes px (in points with 72dpi)
-        font = createFont(family, Math.round(CSSUnits.pixels(size)), weight, style, CSSUnits.pixels(spacing));
+        font = obtainFont(family, Math.round(CSSUnits.pixels(size)), weight, style, CSSUnits.pixels(spacing));
     }
     
     @Override
@@ -233,7 +262,30 @@ public class GraphicsVisualContext extends VisualContext
         if (style == CSSProperty.FontStyle.ITALIC || style == CSSProperty.FontStyle.OBLIQUE)
             fs = fs | Font.ITALIC;
         
-        return new Font(family, fs, size);
+        final Font web = (webFonts == null) ? null : webFonts.getFont(family);
+        if (web != null)
+            return web.deriveFont(fs, (float) size);
+        else
+            return new Font(family, fs, size);
+    }
+    
+    /**
+     * Obtains the font for the given parameters. The fonts are interned in the {@link FontRegistry}
+     * so that the same font instance is shared by all the contexts; new fonts are created
+     * using {@link #createFont(String, int, CSSProperty.FontWeight, CSSProperty.FontStyle, float)}.
+     */
+    protected Font obtainFont(String family, int size, CSSProperty.FontWeight weight,
+            CSSProperty.FontStyle style, float spacing)
+    {
+        int fs = Font.PLAIN;
+        if (FontSpec.representsBold(weight))
+            fs = Font.BOLD;
+        if (style == CSSProperty.FontStyle.ITALIC || style == CSSProperty.FontStyle.OBLIQUE)
+            fs = fs | Font.ITALIC;
+        //the tracking depends on the spacing relatively to the font size
+        final float tracking = (spacing >= 0.0001) ? spacing / getFontSize() : 0;
+        return FontRegistry.getInstance().getFont(getClass(), family, size, fs, tracking, defaultFontAttributes,
+                () -> createFont(family, size, weight, style, spacing));
     }
     
     protected Font createFont(String family, int size, CSSProperty.FontWeight weight,
@@ -260,19 +312,13 @@ public class GraphicsVisualContext extends VisualContext
     @Override
     protected String fontAvailable(String family, boolean isBold, boolean isItalic)
     {
-        final String avail[] = GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
-        for (int i = 0; i < avail.length; i++)
-        {
-            if (avail[i].equalsIgnoreCase(family))
-                return avail[i];
-        }
-        return null;
+        return FontRegistry.getInstance().findFamily(family);
     }
     
     @Override
     protected String getFallbackFont()
     {
-        final String avail[] = GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
+        final String avail[] = FontRegistry.getInstance().getFamilyNames();
         if (avail.length == 0)
             return "Serif"; //no physical fonts available, give up
         //first try: helvetica
@@ -295,32 +341,36 @@ public class GraphicsVisualContext extends VisualContext
         return ret;
     }
     
+    /**
+     * Obtains the web fonts available in this context.
+     * @return the web font scope or {@code null} when no scope is used
+     */
+    public WebFontRegistry.Scope getWebFontScope()
+    {
+        return webFonts;
+    }
+
+    /**
+     * Sets the scope of the web fonts used by the engine. The external fonts are loaded using
+     * the shared {@link WebFontRegistry} and they are only available within the given scope.
+     * By default, a new scope is created for each root context.
+     * @param webFonts the web font scope
+     */
+    public void setWebFontScope(WebFontRegistry.Scope webFonts)
+    {
+        this.webFonts = webFonts;
+    }
+
     @Override
     protected String registerExternalFont(TermURI urlstring, String format)
             throws MalformedURLException, IOException
     {
         String nameFound = null;
-        if (format == null || FontDecoder.supportedFormats.contains(format))
+        if (webFonts != null && (format == null || FontDecoder.supportedFormats.contains(format)))
         {
             URL url = DataURLHandler.createURL(urlstring.getBase(), urlstring.getValue());
-            String regName = FontDecoder.findRegisteredFont(url);
-            if (regName == null)
-            {
-                DocumentSource imgsrc = getViewport().getConfig().createDocumentSource(url);
-                Font newFont;
-                try {
-                    newFont = FontDecoder.decodeFont(imgsrc, format);
-                } catch (FontFormatException e) {
-                    throw new IOException(e);
-                }
-                if (GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(newFont))
-                    log.debug("Registered font: {}", newFont.getFontName());
-                else
-                    log.debug("Failed to register font: {} (not fatal, probably already existing)", newFont.getFontName());
-                regName = newFont.getFontName();
-                FontDecoder.registerFont(url, regName);
-            }
-            nameFound = regName;
+            WebFontRegistry.WebFont font = WebFontRegistry.getInstance().getFont(url, format, getViewport().getConfig());
+            nameFound = webFonts.add(font);
         }
         return nameFound;
     }
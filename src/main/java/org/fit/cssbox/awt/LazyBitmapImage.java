@@ -0,0 +1,183 @@
+/*
+ * LazyBitmapImage.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:28:12 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bitmap image whose pixels are decoded only when the image is drawn. Only the encoded image
+ * data and the intrinsic image size are kept after loading. When the image is requested for a given
+ * target size, it is decoded using the source subsampling so that the resulting resolution is not
+ * lower than required for the target size. The decoded image is kept for the subsequent requests
+ * and it is only decoded again when a higher resolution is required.
+ *
+ * @author agent
+ */
+public class LazyBitmapImage extends BitmapImage
+{
+    private static final Logger log = LoggerFactory.getLogger(LazyBitmapImage.class);
+
+    private final byte[] data;
+    private final int width;
+    private final int height;
+
+    /** The decoded image or {@code null} when not decoded yet */
+    private BufferedImage image;
+    /** The subsampling used for the decoded image */
+    private int imageSubsampling;
+
+
+    /**
+     * Creates a new lazily decoded image.
+     * @param url the image URL
+     * @param data the encoded image data
+     * @param width the intrinsic image width obtained from the image header
+     * @param height the intrinsic image height obtained from the image header
+     */
+    protected LazyBitmapImage(URL url, byte[] data, int width, int height)
+    {
+        super(url, null);
+        this.data = data;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Obtains the image decoded in the full resolution.
+     */
+    @Override
+    public BufferedImage getBufferedImage()
+    {
+        return decode(1);
+    }
+
+    /**
+     * Obtains the image decoded using the greatest subsampling that does not decrease the
+     * resolution under the target size.
+     */
+    @Override
+    public BufferedImage getBufferedImage(float targetWidth, float targetHeight)
+    {
+        return decode(computeSubsampling(targetWidth, targetHeight));
+    }
+
+    @Override
+    public float getWidth()
+    {
+        return width;
+    }
+
+    @Override
+    public float getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Obtains the size of the encoded image data.
+     * @return the data size in bytes
+     */
+    public int getDataSize()
+    {
+        return data.length;
+    }
+
+    /**
+     * Computes the subsampling factor for the given target size.
+     * @param targetWidth the target width in pixels
+     * @param targetHeight the target height in pixels
+     * @return the subsampling factor (at least 1)
+     */
+    protected int computeSubsampling(float targetWidth, float targetHeight)
+    {
+        if (targetWidth <= 0 || targetHeight <= 0)
+            return 1;
+        final float fx = width / targetWidth;
+        final float fy = height / targetHeight;
+        return Math.max(1, (int) Math.floor(Math.min(fx, fy)));
+    }
+
+    /**
+     * Obtains the image decoded with the given subsampling or a finer one. When the image
+     * cannot be decoded, an empty transparent image is returned.
+     * @param subsampling the required subsampling factor
+     * @return the decoded image
+     */
+    protected synchronized BufferedImage decode(int subsampling)
+    {
+        if (image == null || imageSubsampling > subsampling)
+        {
+            BufferedImage decoded = readImage(subsampling);
+            if (decoded != null)
+            {
+                image = decoded;
+                imageSubsampling = subsampling;
+            }
+            else if (image == null)
+            {
+                image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+                imageSubsampling = 1; //never try again
+            }
+        }
+        return image;
+    }
+
+    private BufferedImage readImage(int subsampling)
+    {
+        BufferedImage ret = null;
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(data)))
+        {
+            Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+            while (ret == null && imageReaders.hasNext())
+            {
+                ImageReader currentImageReader = imageReaders.next();
+                imageInputStream.seek(0);
+                currentImageReader.setInput(imageInputStream);
+                try
+                {
+                    ImageReadParam param = currentImageReader.getDefaultReadParam();
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    ret = currentImageReader.read(0, param);
+                } catch (Exception e) {
+                    log.error("Image decoding error: " + e.getMessage() + " with reader " + currentImageReader);
+                } finally {
+                    currentImageReader.dispose();
+                }
+            }
+        } catch (Exception e) {
+            log.error("Image decoding error: " + e.getMessage());
+        }
+        if (ret != null && subsampling > 1)
+            log.debug("Decoded {} subsampled by {} to {}x{}", getUrl(), subsampling, ret.getWidth(), ret.getHeight());
+        return ret;
+    }
+
+}
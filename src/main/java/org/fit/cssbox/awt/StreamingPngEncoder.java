@@ -0,0 +1,340 @@
+/*
+ * StreamingPngEncoder.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:31:19 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A PNG encoder that writes the image progressively by rows. The image rows may be passed
+ * in several parts (e.g. horizontal strips of the page painted one by one) so that the whole
+ * image never needs to be kept in memory. The resulting image is an 8-bit RGB or RGBA
+ * non-interlaced PNG image. The encoder should be closed when no longer used in order to release
+ * the native compression resources, even when the image has not been finished because of an error.
+ *
+ * @author agent
+ */
+public class StreamingPngEncoder implements Closeable
+{
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    /** Maximal size of the IDAT chunk data */
+    private static final int IDAT_SIZE = 65536;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final boolean alpha;
+    private final int bpp;
+    private final Deflater deflater;
+    private final DeflaterOutputStream zout;
+
+    private final int[] pixels;
+    private byte[] prevRow; //the previous row, zeros before the first row
+    private byte[] curRow;
+    private final byte[][] filtered;
+    private int rowsWritten;
+    private boolean finished;
+    private boolean closed;
+
+
+    /**
+     * Creates a new encoder and writes the PNG header to the output stream.
+     * @param out the output stream. The stream is not closed by the encoder.
+     * @param width the image width in pixels
+     * @param height the total image height in pixels
+     * @param alpha {@code true} when the alpha channel should be stored
+     * @throws IOException
+     */
+    public StreamingPngEncoder(OutputStream out, int width, int height, boolean alpha) throws IOException
+    {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.bpp = alpha ? 4 : 3;
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.zout = new DeflaterOutputStream(new ChunkOutputStream(), deflater, IDAT_SIZE);
+        pixels = new int[width];
+        prevRow = new byte[width * bpp];
+        curRow = new byte[width * bpp];
+        filtered = new byte[5][width * bpp];
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a new encoder and writes the PNG header to the output channel.
+     * @param channel the output channel. The channel is not closed by the encoder.
+     * @param width the image width in pixels
+     * @param height the total image height in pixels
+     * @param alpha {@code true} when the alpha channel should be stored
+     * @throws IOException
+     */
+    public StreamingPngEncoder(WritableByteChannel channel, int width, int height, boolean alpha) throws IOException
+    {
+        this(Channels.newOutputStream(channel), width, height, alpha);
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Obtains the number of image rows already written.
+     * @return the number of rows
+     */
+    public int getRowsWritten()
+    {
+        return rowsWritten;
+    }
+
+    /**
+     * Writes the next image rows taken from the given image.
+     * @param src the source image. Its width must be at least the encoded image width.
+     * @param srcY the first row of the source image to be written
+     * @param rows the number of rows to be written
+     * @throws IOException
+     */
+    public void writeRows(BufferedImage src, int srcY, int rows) throws IOException
+    {
+        if (finished || closed)
+            throw new IllegalStateException("The image has been already finished");
+        if (rowsWritten + rows > height)
+            throw new IllegalArgumentException("Too many rows: " + (rowsWritten + rows) + " > " + height);
+        for (int y = srcY; y < srcY + rows; y++)
+        {
+            src.getRGB(0, y, width, 1, pixels, 0, width);
+            int i = 0;
+            for (int x = 0; x < width; x++)
+            {
+                final int p = pixels[x];
+                curRow[i++] = (byte) (p >> 16);
+                curRow[i++] = (byte) (p >> 8);
+                curRow[i++] = (byte) p;
+                if (alpha)
+                    curRow[i++] = (byte) (p >> 24);
+            }
+            final int filter = filterRow();
+            zout.write(filter);
+            zout.write(filtered[filter]);
+            //swap the rows
+            final byte[] tmp = prevRow;
+            prevRow = curRow;
+            curRow = tmp;
+            rowsWritten++;
+        }
+    }
+
+    /**
+     * Finishes the image: flushes the compressed data and writes the end of the image.
+     * All the image rows must have been written before.
+     * @throws IOException
+     */
+    public void finish() throws IOException
+    {
+        if (!finished)
+        {
+            if (closed)
+                throw new IllegalStateException("The encoder has been closed");
+            if (rowsWritten != height)
+                throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows have been written");
+            zout.close(); //flushes the remaining IDAT data, the output stream is not closed
+            close();
+            writeChunk("IEND", new byte[0], 0);
+            out.flush();
+            finished = true;
+        }
+    }
+
+    /**
+     * Releases the compression resources. The output stream is not closed. When the image has not
+     * been finished, it remains incomplete.
+     */
+    @Override
+    public void close()
+    {
+        if (!closed)
+        {
+            deflater.end();
+            closed = true;
+        }
+    }
+
+    //=================================================================================
+
+    private void writeHeader() throws IOException
+    {
+        out.write(SIGNATURE);
+        final byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8] = 8; //bit depth
+        ihdr[9] = (byte) (alpha ? 6 : 2); //color type: truecolor (with alpha)
+        ihdr[10] = 0; //compression
+        ihdr[11] = 0; //filter method
+        ihdr[12] = 0; //no interlace
+        writeChunk("IHDR", ihdr, ihdr.length);
+    }
+
+    /**
+     * Applies all the filter types to the current row and chooses the one with the minimal sum
+     * of absolute differences.
+     * @return the chosen filter type
+     */
+    private int filterRow()
+    {
+        final int len = curRow.length;
+        final byte[] none = filtered[0];
+        final byte[] sub = filtered[1];
+        final byte[] up = filtered[2];
+        final byte[] avg = filtered[3];
+        final byte[] paeth = filtered[4];
+        final long[] sums = new long[5];
+        for (int i = 0; i < len; i++)
+        {
+            final int x = curRow[i] & 0xff;
+            final int a = (i >= bpp) ? (curRow[i - bpp] & 0xff) : 0;
+            final int b = prevRow[i] & 0xff;
+            final int c = (i >= bpp) ? (prevRow[i - bpp] & 0xff) : 0;
+            none[i] = (byte) x;
+            sub[i] = (byte) (x - a);
+            up[i] = (byte) (x - b);
+            avg[i] = (byte) (x - ((a + b) >> 1));
+            paeth[i] = (byte) (x - paethPredictor(a, b, c));
+            sums[0] += Math.abs(none[i]);
+            sums[1] += Math.abs(sub[i]);
+            sums[2] += Math.abs(up[i]);
+            sums[3] += Math.abs(avg[i]);
+            sums[4] += Math.abs(paeth[i]);
+        }
+        int best = 0;
+        for (int f = 1; f < sums.length; f++)
+        {
+            if (sums[f] < sums[best])
+                best = f;
+        }
+        return best;
+    }
+
+    private static int paethPredictor(int a, int b, int c)
+    {
+        final int p = a + b - c;
+        final int pa = Math.abs(p - a);
+        final int pb = Math.abs(p - b);
+        final int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc)
+            return a;
+        else if (pb <= pc)
+            return b;
+        else
+            return c;
+    }
+
+    private void writeChunk(String type, byte[] data, int len) throws IOException
+    {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        final byte[] buf = new byte[4];
+        putInt(buf, 0, len);
+        out.write(buf);
+        out.write(typeBytes);
+        out.write(data, 0, len);
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, len);
+        putInt(buf, 0, (int) crc.getValue());
+        out.write(buf);
+    }
+
+    private static void putInt(byte[] buf, int ofs, int value)
+    {
+        buf[ofs] = (byte) (value >>> 24);
+        buf[ofs + 1] = (byte) (value >>> 16);
+        buf[ofs + 2] = (byte) (value >>> 8);
+        buf[ofs + 3] = (byte) value;
+    }
+
+    //=================================================================================
+
+    /**
+     * Splits the compressed data to IDAT chunks.
+     */
+    private class ChunkOutputStream extends OutputStream
+    {
+        private final byte[] buffer = new byte[IDAT_SIZE];
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (count == buffer.length)
+                flushChunk();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            while (len > 0)
+            {
+                if (count == buffer.length)
+                    flushChunk();
+                final int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (count > 0)
+                flushChunk();
+        }
+
+        private void flushChunk() throws IOException
+        {
+            writeChunk("IDAT", buffer, count);
+            count = 0;
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * StreamingRenderer.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 18:03:44 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fit.cssbox.css.CSSNorm;
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.css.HTMLNorm;
+import org.fit.cssbox.io.DocumentSource;
+import org.fit.cssbox.io.StreamingDOMSource;
+import org.fit.cssbox.layout.BoundedImageCache;
+import org.fit.cssbox.layout.Box;
+import org.fit.cssbox.layout.BrowserConfig;
+import org.fit.cssbox.layout.Dimension;
+import org.fit.cssbox.layout.ElementBox;
+import org.fit.cssbox.layout.Rectangle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import cz.vutbr.web.css.MediaSpec;
+import cz.vutbr.web.css.StyleSheet;
+
+/**
+ * Renders a document incrementally while it is being parsed. This is intended for very large documents
+ * with a simple structure (e.g. long logs or reports) that consist of a sequence of blocks. Each top-level
+ * child of the {@code <body>} element is styled, laid out and painted separately as soon as it is parsed;
+ * the resulting image is passed to a {@link ChunkConsumer} and the DOM, the styles and the boxes of the
+ * block are released. Therefore, the memory used is proportional to the largest block, not to
+ * the whole document.
+ *
+ * Since the blocks are processed independently, the layout is the same as for the complete document
+ * only for a simple block flow: the margins of the subsequent blocks do not collapse, the floats and the
+ * positioned boxes do not interact with the other blocks and the selectors that depend on the other
+ * blocks (e.g. the sibling selectors) do not match. The style sheets linked or embedded in the document
+ * head are used for the whole document; the {@code <style>} elements in the body are ignored. The inline
+ * styles and the presentation attributes (e.g. {@code bgcolor}) are applied for the body and for each block.
+ *
+ * @author agent
+ */
+public class StreamingRenderer
+{
+    private static Logger log = LoggerFactory.getLogger(StreamingRenderer.class);
+
+    private final DocumentSource docSource;
+    private final float width;
+    private MediaSpec media;
+    private BrowserConfig config;
+
+
+    /**
+     * A consumer of the rendered parts of the document.
+     */
+    public interface ChunkConsumer
+    {
+        /**
+         * Called when the next part of the document has been rendered.
+         * @param image the image of the rendered part. It is valid during the call only.
+         * @param y the vertical position of the part in the whole document
+         * @throws IOException
+         */
+        public void chunkRendered(BufferedImage image, int y) throws IOException;
+    }
+
+    /**
+     * Creates a new renderer.
+     * @param docSource the source of the document to be rendered
+     * @param width the canvas width in pixels
+     */
+    public StreamingRenderer(DocumentSource docSource, float width)
+    {
+        this.docSource = docSource;
+        this.width = width;
+        this.media = new MediaSpec("screen");
+        this.config = new BrowserConfig();
+        this.config.setImageCache(new BoundedImageCache());
+    }
+
+    public MediaSpec getMediaSpec()
+    {
+        return media;
+    }
+
+    /**
+     * Sets the media specification used for the style sheets. By default, the {@code screen} media is used.
+     * @param media the media specification
+     */
+    public void setMediaSpec(MediaSpec media)
+    {
+        this.media = media;
+    }
+
+    public BrowserConfig getConfig()
+    {
+        return config;
+    }
+
+    /**
+     * Sets the browser configuration used for all the blocks. The default configuration uses
+     * a {@link BoundedImageCache} so that the repeated images are loaded only once; an image cache
+     * should be configured for the same purpose in the new configuration.
+     * @param config the new configuration
+     */
+    public void setConfig(BrowserConfig config)
+    {
+        this.config = config;
+    }
+
+    /**
+     * Parses and renders the document.
+     * @param consumer the consumer that obtains the rendered parts in the document order
+     * @return the total height of the rendered document
+     * @throws IOException
+     * @throws SAXException
+     */
+    public int render(final ChunkConsumer consumer) throws IOException, SAXException
+    {
+        final BlockRenderer renderer = new BlockRenderer(consumer);
+        final StreamingDOMSource parser = new StreamingDOMSource(docSource);
+        parser.parse(renderer);
+        renderer.finish();
+        return renderer.offset;
+    }
+
+    /**
+     * Creates the analyzer for the document with the complete head. The default implementation uses
+     * the standard style sheets and the author style sheets linked from the head. This may be overriden
+     * in order to configure the analyzer.
+     * @param doc the document with the complete head and an empty body; the attributes of the body
+     * are already converted to styles
+     * @return the new analyzer
+     */
+    protected DOMAnalyzer createAnalyzer(Document doc)
+    {
+        DOMAnalyzer da = new DOMAnalyzer(doc, docSource.getURL());
+        da.setStyleSheetCache(config.getStyleSheetCache());
+        da.setMediaSpec(media);
+        da.addStyleSheet(CSSNorm.getStdStyleSheet()); //use the standard style sheet
+        da.addStyleSheet(CSSNorm.getUserStyleSheet()); //use the additional style sheet
+        da.addStyleSheet(CSSNorm.getFormsStyleSheet()); //render form fields using css
+        da.getStyleSheets(); //load the author style sheets from the head
+        return da;
+    }
+
+    /**
+     * Creates the engine used for rendering the blocks. The engine is created for the first block and
+     * it is used for all the blocks of the document. This may be overriden in order to configure the engine.
+     * @param decoder the analyzer of the document
+     * @param baseUrl the document base URL
+     * @return the new engine
+     */
+    protected GraphicsEngine createEngine(DOMAnalyzer decoder, URL baseUrl)
+    {
+        GraphicsEngine engine = new GraphicsEngine(decoder.getRoot(), decoder, baseUrl);
+        engine.setAutoMediaUpdate(false);
+        return engine;
+    }
+
+    /**
+     * Converts the HTML attributes of the new block to styles. The attributes of the body itself
+     * are converted once when the head is parsed.
+     */
+    private void blockAttributesToStyles(Element body)
+    {
+        final List<Element> blocks = new ArrayList<>();
+        for (Node child = body.getFirstChild(); child != null; child = child.getNextSibling())
+        {
+            if (child.getNodeType() == Node.ELEMENT_NODE)
+                blocks.add((Element) child);
+        }
+        for (Element block : blocks)
+            HTMLNorm.normalizeHTMLTree(block); //may move some nodes before the block
+        for (Node child = body.getFirstChild(); child != null; child = child.getNextSibling())
+            HTMLNorm.attributesToStyles(child, "");
+    }
+
+    /**
+     * Finds the vertical range covered by the boxes that correspond to the body children.
+     */
+    private void findBlockRange(Box box, Element body, float[] range)
+    {
+        final Node node = box.getNode();
+        if (node != null && node.getParentNode() == body)
+        {
+            final Rectangle b = box.getAbsoluteBounds();
+            range[0] = Math.min(range[0], b.y);
+            range[1] = Math.max(range[1], b.y + b.height);
+        }
+        else if (box instanceof ElementBox)
+        {
+            final ElementBox eb = (ElementBox) box;
+            for (int i = 0; i < eb.getSubBoxNumber(); i++)
+                findBlockRange(eb.getSubBox(i), body, range);
+        }
+    }
+
+    //=========================================================================
+
+    /**
+     * Renders the parsed blocks using a single analyzer and engine.
+     */
+    private class BlockRenderer implements StreamingDOMSource.BlockHandler
+    {
+        private final ChunkConsumer consumer;
+        private DOMAnalyzer analyzer;
+        private GraphicsEngine engine;
+        /** The inline style sheets of the current block */
+        private final List<StyleSheet> blockSheets = new ArrayList<>();
+        /** The total height rendered so far */
+        private int offset;
+        /** The image of the last rendered block */
+        private BufferedImage lastImage;
+        /** The bottom of the last rendered block in its image */
+        private int lastBottom;
+
+        public BlockRenderer(ChunkConsumer consumer)
+        {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void headParsed(Document doc) throws IOException
+        {
+            final Element body = (Element) doc.getElementsByTagName("body").item(0);
+            if (body != null)
+                HTMLNorm.attributesToStyles(body, ""); //the body is empty now; its styles are collected with the head
+            analyzer = createAnalyzer(doc);
+        }
+
+        @Override
+        public void blockParsed(Document doc, Element body) throws IOException
+        {
+            blockAttributesToStyles(body);
+            //replace the inline styles of the previous block that has been released
+            for (StyleSheet sheet : blockSheets)
+                analyzer.removeStyleSheet(sheet);
+            blockSheets.clear();
+            for (Node child = body.getFirstChild(); child != null; child = child.getNextSibling())
+            {
+                if (child.getNodeType() == Node.ELEMENT_NODE)
+                {
+                    final StyleSheet sheet = analyzer.getInlineStyleSheet((Element) child);
+                    if (!sheet.isEmpty())
+                    {
+                        analyzer.addStyleSheet(sheet);
+                        blockSheets.add(sheet);
+                    }
+                }
+            }
+            analyzer.recomputeStyles();
+            if (engine == null)
+            {
+                engine = createEngine(analyzer, docSource.getURL());
+                engine.setConfig(config);
+            }
+            engine.createLayout(new Dimension(width, 1));
+
+            //the part of the canvas that corresponds to the block
+            final float[] range = new float[] {Float.MAX_VALUE, 0};
+            findBlockRange(engine.getViewport(), body, range);
+            if (range[0] > range[1])
+                return; //nothing displayed
+            final BufferedImage img = engine.getImage();
+            final int top = (offset == 0) ? 0 : Math.max(0, Math.round(range[0])); //keep the body top in the first block
+            final int bottom = Math.min(img.getHeight(), Math.round(range[1]));
+            if (bottom <= top)
+                return;
+            log.debug("Rendered block at {}, height {}", offset, bottom - top);
+            consumer.chunkRendered(img.getSubimage(0, top, img.getWidth(), bottom - top), offset);
+            offset += bottom - top;
+            lastImage = img; //a new image is created for each layout
+            lastBottom = bottom;
+        }
+
+        /**
+         * Renders the rest of the last block below its contents (the bottom padding, border and margin
+         * of the body and the root element).
+         */
+        public void finish() throws IOException
+        {
+            if (lastImage != null && lastBottom < lastImage.getHeight())
+            {
+                final int height = lastImage.getHeight() - lastBottom;
+                consumer.chunkRendered(lastImage.getSubimage(0, lastBottom, lastImage.getWidth(), height), offset);
+                offset += height;
+            }
+            lastImage = null;
+        }
+    }
+
+}
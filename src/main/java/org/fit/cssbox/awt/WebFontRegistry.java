@@ -0,0 +1,436 @@
+/*
+ * WebFontRegistry.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 18:09:04 by agent
+ */
+package org.fit.cssbox.awt;
+
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.css.FontDecoder;
+import org.fit.cssbox.css.FontSpec;
+import org.fit.cssbox.css.FontTable;
+import org.fit.cssbox.io.DocumentSource;
+import org.fit.cssbox.layout.BrowserConfig;
+import org.fit.net.DataURLHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import cz.vutbr.web.css.CSSProperty;
+import cz.vutbr.web.css.NodeData;
+import cz.vutbr.web.css.RuleFontFace;
+import cz.vutbr.web.css.Term;
+import cz.vutbr.web.css.TermList;
+
+/**
+ * A process-wide registry of the web fonts (the fonts loaded from the {@code @font-face} URLs) shared
+ * by all the engines. Each font URL is downloaded and decoded only once even when it is requested
+ * by several concurrent layouts: the first request loads the font and the other ones wait for the
+ * result. The number of the cached decoded fonts is limited.
+ *
+ * The web fonts are not registered in the graphics environment. Instead, each loaded font obtains
+ * a unique name and each engine keeps its own {@link Scope} of the web fonts used by its document.
+ * Therefore, the fonts of a document are not visible in the other documents and the fonts with the
+ * same internal name loaded from different URLs do not clash.
+ *
+ * @author agent
+ */
+public class WebFontRegistry
+{
+    private static Logger log = LoggerFactory.getLogger(WebFontRegistry.class);
+
+    /** Maximal number of the cached fonts; the loaded fonts are discarded when exceeded */
+    private static final int MAX_ENTRIES = 256;
+
+    /** Number of threads used for prefetching */
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final WebFontRegistry instance = new WebFontRegistry();
+
+    /** The loaded fonts indexed by their URLs in the external form (URL.equals() may resolve the host names) */
+    private final ConcurrentHashMap<String, FutureTask<WebFont>> loads;
+    private final AtomicInteger nextId;
+
+
+    /**
+     * Obtains the shared registry instance.
+     * @return the registry
+     */
+    public static WebFontRegistry getInstance()
+    {
+        return instance;
+    }
+
+    private WebFontRegistry()
+    {
+        loads = new ConcurrentHashMap<>();
+        nextId = new AtomicInteger();
+    }
+
+    /**
+     * Obtains the font from the given URL. When the font is not available, it is loaded in the current
+     * thread; when it is just being loaded by another thread, the method waits for the result.
+     * @param url the font URL
+     * @param format the font format according to the CSS specification or {@code null} when not specified
+     * @param config the browser configuration used for creating the document sources
+     * @return the loaded font
+     * @throws IOException when the font could not be loaded or decoded
+     */
+    public WebFont getFont(final URL url, final String format, final BrowserConfig config) throws IOException
+    {
+        final String key = url.toExternalForm();
+        FutureTask<WebFont> task = loads.get(key);
+        if (task == null)
+        {
+            if (loads.size() >= MAX_ENTRIES)
+                discardLoaded();
+            final FutureTask<WebFont> newTask = new FutureTask<>(new Callable<WebFont>() {
+                @Override
+                public WebFont call() throws Exception
+                {
+                    return loadFont(url, format, config);
+                }
+            });
+            task = loads.putIfAbsent(key, newTask);
+            if (task == null)
+            {
+                task = newTask;
+                task.run(); //we are the first one, load the font
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading font " + url);
+        } catch (CancellationException e) {
+            loads.remove(key, task);
+            throw new IOException("Font loading cancelled: " + url);
+        } catch (ExecutionException e) {
+            loads.remove(key, task); //allow retrying later
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Checks whether the font from the given URL is loaded or being loaded.
+     * @param url the font URL
+     * @return {@code true} when the font is available
+     */
+    public boolean isLoaded(URL url)
+    {
+        return loads.containsKey(url.toExternalForm());
+    }
+
+    /**
+     * Loads the fonts used by the styled DOM subtree concurrently. For each font family that is
+     * required by the computed styles and defined in the font table, only the first loadable source
+     * is loaded. The method returns when all the fonts are loaded or when the font prefetch timeout
+     * (see {@link BrowserConfig#getFontPrefetchTimeout()}) elapses. The fonts that have not been
+     * loaded in time keep loading and they are obtained later during the layout.
+     * @param root the root element of the subtree
+     * @param decoder the CSS decoder used for obtaining the element styles
+     * @param table the font table of the document
+     * @param config the browser configuration
+     */
+    public void prefetch(Element root, DOMAnalyzer decoder, FontTable table, final BrowserConfig config)
+    {
+        final Set<List<RuleFontFace.Source>> used = new LinkedHashSet<>();
+        scanElement(root, decoder, table, new HashMap<FontSpec, Boolean>(), used);
+        final Map<String, URL> urls = new LinkedHashMap<>();
+        final Map<String, String> formats = new HashMap<>();
+        for (List<RuleFontFace.Source> srcs : used)
+        {
+            final RuleFontFace.SourceURL usrc = findLoadableSource(srcs);
+            if (usrc != null)
+            {
+                try {
+                    final URL url = DataURLHandler.createURL(usrc.getURI().getBase(), usrc.getURI().getValue());
+                    final String key = url.toExternalForm();
+                    if (!loads.containsKey(key) && !urls.containsKey(key))
+                    {
+                        urls.put(key, url);
+                        formats.put(key, usrc.getFormat());
+                    }
+                } catch (MalformedURLException e) {
+                    log.error("Couldn't load font with URI {} ({})", usrc.getURI(), e.getMessage());
+                }
+            }
+        }
+        if (urls.isEmpty())
+            return;
+
+        log.debug("Prefetching {} fonts", urls.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(urls.size(), DEFAULT_THREADS), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "cssbox-font-prefetch");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<>(urls.size());
+            for (final Map.Entry<String, URL> entry : urls.entrySet())
+            {
+                final String format = formats.get(entry.getKey());
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            getFont(entry.getValue(), format, config);
+                        } catch (IOException e) {
+                            log.error("Couldn't load font with URI {} ({})", entry.getKey(), e.getMessage());
+                        }
+                    }
+                }));
+            }
+            final long deadline = System.currentTimeMillis() + config.getFontPrefetchTimeout();
+            for (Future<?> future : futures)
+            {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    break;
+                try {
+                    future.get(remaining, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    log.warn("Font prefetching timeout");
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    //the errors are logged by the task
+                }
+            }
+        } finally {
+            executor.shutdown(); //let the running loads finish, the waiting layouts may need them
+        }
+    }
+
+    //=========================================================================
+
+    /**
+     * Collects the font table entries used by the computed styles of the subtree.
+     * @param el the root element of the subtree
+     * @param decoder the CSS decoder used for obtaining the element styles
+     * @param table the font table of the document
+     * @param found the already resolved font specifications: {@code true} when the font is available
+     * @param used the collected font table entries
+     */
+    private void scanElement(Element el, DOMAnalyzer decoder, FontTable table,
+            Map<FontSpec, Boolean> found, Set<List<RuleFontFace.Source>> used)
+    {
+        final NodeData style = decoder.getElementStyleInherited(el);
+        if (style != null)
+        {
+            if (style.getProperty("display") == CSSProperty.Display.NONE)
+                return; //no boxes are created for the subtree
+            if (style.getProperty("font-family") == CSSProperty.FontFamily.list_values)
+            {
+                final TermList list = style.getValue(TermList.class, "font-family");
+                if (list != null)
+                {
+                    final CSSProperty.FontWeight weight = style.getProperty("font-weight");
+                    final CSSProperty.FontStyle fstyle = style.getProperty("font-style");
+                    for (Term<?> term : list)
+                    {
+                        final Object value = term.getValue();
+                        if (value instanceof CSSProperty.FontFamily)
+                            break; //a logical font, the system fonts are used
+                        final FontSpec spec = new FontSpec(value.toString(), weight, fstyle);
+                        Boolean available = found.get(spec);
+                        if (available == null)
+                        {
+                            final List<RuleFontFace.Source> srcs = table.findBestMatch(spec);
+                            if (srcs != null && !srcs.isEmpty())
+                            {
+                                used.add(srcs);
+                                available = true;
+                            }
+                            else
+                                available = (FontRegistry.getInstance().findFamily(spec.getFamily()) != null);
+                            found.put(spec, available);
+                        }
+                        if (available)
+                            break; //the remaining families are fallbacks
+                    }
+                }
+            }
+        }
+        final NodeList children = el.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++)
+        {
+            final Node child = children.item(i);
+            if (child.getNodeType() == Node.ELEMENT_NODE)
+                scanElement((Element) child, decoder, table, found, used);
+        }
+    }
+
+    /**
+     * Finds the font source that will be loaded for the given font table entry.
+     * @param srcs the font sources of the entry
+     * @return the first source with a supported format or {@code null} when an installed local font
+     * is used or no source is supported
+     */
+    private RuleFontFace.SourceURL findLoadableSource(List<RuleFontFace.Source> srcs)
+    {
+        for (RuleFontFace.Source src : srcs)
+        {
+            if (src instanceof RuleFontFace.SourceLocal)
+            {
+                if (FontRegistry.getInstance().findFamily(((RuleFontFace.SourceLocal) src).getName()) != null)
+                    return null;
+            }
+            else if (src instanceof RuleFontFace.SourceURL)
+            {
+                final String format = ((RuleFontFace.SourceURL) src).getFormat();
+                if (format == null || FontDecoder.supportedFormats.contains(format))
+                    return (RuleFontFace.SourceURL) src;
+            }
+        }
+        return null;
+    }
+
+    //=========================================================================
+
+    private WebFont loadFont(URL url, String format, BrowserConfig config) throws IOException
+    {
+        final DocumentSource src = config.createDocumentSource(url);
+        try {
+            final Font font = FontDecoder.decodeFont(src, format);
+            final String name = font.getFontName() + "#" + nextId.incrementAndGet();
+            log.debug("Loaded font: {} as {}", url, name);
+            return new WebFont(name, font);
+        } catch (FontFormatException e) {
+            throw new IOException(e);
+        } finally {
+            src.close();
+        }
+    }
+
+    /**
+     * Discards the loaded fonts; the fonts being loaded are kept.
+     */
+    private void discardLoaded()
+    {
+        for (Iterator<FutureTask<WebFont>> it = loads.values().iterator(); it.hasNext(); )
+        {
+            if (it.next().isDone())
+                it.remove();
+        }
+    }
+
+    //=========================================================================
+
+    /**
+     * A loaded web font with its unique name.
+     */
+    public static class WebFont
+    {
+        private final String name;
+        private final Font font;
+
+        public WebFont(String name, Font font)
+        {
+            this.name = name;
+            this.font = font;
+        }
+
+        /**
+         * Obtains the unique name of the font that may be used as the font family name in a {@link Scope}.
+         * @return the font name
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Obtains the decoded font of size 1.
+         * @return the font
+         */
+        public Font getFont()
+        {
+            return font;
+        }
+    }
+
+    /**
+     * The web fonts used by a single engine indexed by their unique names. The scope may be used
+     * by concurrent layouts.
+     */
+    public static class Scope
+    {
+        private final ConcurrentHashMap<String, Font> fonts = new ConcurrentHashMap<>();
+
+        /**
+         * Adds a web font to the scope.
+         * @param font the font to add
+         * @return the name used for the font in the scope
+         */
+        public String add(WebFont font)
+        {
+            fonts.put(font.getName(), font.getFont());
+            return font.getName();
+        }
+
+        /**
+         * Finds a web font by its name.
+         * @param name the font name as returned by {@link #add(WebFont)}
+         * @return the font or {@code null} when the font does not belong to the scope
+         */
+        public Font getFont(String name)
+        {
+            return fonts.get(name);
+        }
+    }
+
+}
@@ -209,7 +209,7 @@ public class BackgroundDecoder
                             new BackgroundImageImage(owner, url, position, positionValues, repeat, 
                                     attachment, origin, size, sizeValues);
                     if (ctx.getConfig().getLoadBackgroundImages())
-                        bgimg.setImage(ctx.getImageLoader().loadImage(url));
+                        bgimg.setImage(ctx.loadImage(url));
                     ret = bgimg;
                 }
                 else if (image == CSSProperty.BackgroundImage.gradient)
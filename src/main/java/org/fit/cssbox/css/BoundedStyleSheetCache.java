@@ -0,0 +1,159 @@
+/*
+ * BoundedStyleSheetCache.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:53:26 by agent
+ */
+package org.fit.cssbox.css;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import cz.vutbr.web.css.StyleSheet;
+
+/**
+ * An implementation of the style sheet cache with a limited total size. The size of a style sheet
+ * is estimated by the size of its source data. When the limit is exceeded, the least recently used
+ * style sheets are evicted. The cache is thread-safe.
+ *
+ * @author agent
+ */
+public class BoundedStyleSheetCache implements StyleSheetCache
+{
+    /** Default maximal total size of the cached style sheet sources in bytes (16 MB) */
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private final long maxBytes;
+
+    /** Cached style sheets in the LRU order */
+    private final LinkedHashMap<String, CachedStyleSheet> cache;
+
+    private long currentBytes;
+    private long hits;
+    private long misses;
+
+
+    /**
+     * Creates a new cache with the default size limit.
+     */
+    public BoundedStyleSheetCache()
+    {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a new cache with the given size limit.
+     * @param maxBytes the maximal total size of the cached style sheet sources in bytes
+     */
+    public BoundedStyleSheetCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        cache = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    @Override
+    public synchronized void put(URL url, StyleSheet.Origin origin, CachedStyleSheet sheet)
+    {
+        if (sheet.getSize() > maxBytes)
+            return; //too large to be cached at all
+        final CachedStyleSheet prev = cache.put(createKey(url, origin), sheet);
+        if (prev != null)
+            currentBytes -= prev.getSize();
+        currentBytes += sheet.getSize();
+        //evict the least recently used style sheets
+        Iterator<CachedStyleSheet> it = cache.values().iterator();
+        while (currentBytes > maxBytes && it.hasNext())
+        {
+            final CachedStyleSheet eldest = it.next();
+            it.remove();
+            currentBytes -= eldest.getSize();
+        }
+    }
+
+    @Override
+    public synchronized CachedStyleSheet get(URL url, StyleSheet.Origin origin)
+    {
+        final CachedStyleSheet ret = cache.get(createKey(url, origin));
+        if (ret != null)
+            hits++;
+        else
+            misses++;
+        return ret;
+    }
+
+    private static String createKey(URL url, StyleSheet.Origin origin)
+    {
+        return origin + " " + url.toExternalForm();
+    }
+
+    /**
+     * Removes all the cached style sheets.
+     */
+    public synchronized void clear()
+    {
+        cache.clear();
+        currentBytes = 0;
+    }
+
+    //=========================================================================
+
+    /**
+     * Obtains the maximal total size of the cached style sheets.
+     * @return the size limit in bytes
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Obtains the current total size of the cached style sheet sources.
+     * @return the size in bytes
+     */
+    public synchronized long getCurrentBytes()
+    {
+        return currentBytes;
+    }
+
+    /**
+     * Obtains the number of the currently cached style sheets.
+     * @return the number of style sheets
+     */
+    public synchronized int getStyleSheetCount()
+    {
+        return cache.size();
+    }
+
+    /**
+     * Obtains the number of successful style sheet lookups.
+     * @return the hit count
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Obtains the number of style sheet lookups that did not find the style sheet in the cache.
+     * @return the miss count
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+}
@@ -24,6 +24,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Scanner;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cz.vutbr.web.css.CSSException;
+import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.StyleSheet;
+
 /**
  * This class provides standard style sheets for the browser.
  *
@@ -31,6 +38,7 @@ import java.util.Scanner;
  */
 public class CSSNorm 
 {
+    private static Logger log = LoggerFactory.getLogger(CSSNorm.class);
 
     /**
      * Defines a standard HTML style sheet defining the basic style of the individual elements.
@@ -75,6 +83,75 @@ public class CSSNorm
         }
     }
     
+    /**
+     * Obtains the pre-parsed standard HTML style sheet as returned by {@link #stdStyleSheet()}.
+     * The style sheet is parsed only once per JVM; each call returns a new style sheet with the user
+     * agent origin that may be modified by the caller. The contained rules are shared by all the callers
+     * and they must not be modified. It may be added to a {@link DOMAnalyzer}
+     * using {@link DOMAnalyzer#addStyleSheet(StyleSheet)}.
+     * @return the parsed style sheet
+     */
+    public static StyleSheet getStdStyleSheet()
+    {
+        return copyStyleSheet(StdHolder.sheet);
+    }
+    
+    /**
+     * Obtains the pre-parsed additional style sheet as returned by {@link #userStyleSheet()}.
+     * The style sheet is parsed only once per JVM; each call returns a new style sheet with the user
+     * agent origin that may be modified by the caller. The contained rules are shared and they must not be modified.
+     * @return the parsed style sheet
+     */
+    public static StyleSheet getUserStyleSheet()
+    {
+        return copyStyleSheet(UserHolder.sheet);
+    }
+    
+    /**
+     * Obtains the pre-parsed form field style sheet as returned by {@link #formsStyleSheet()}.
+     * The style sheet is parsed only once per JVM; each call returns a new style sheet with the user
+     * agent origin that may be modified by the caller. The contained rules are shared and they must not be modified.
+     * @return the parsed style sheet
+     */
+    public static StyleSheet getFormsStyleSheet()
+    {
+        return copyStyleSheet(FormsHolder.sheet);
+    }
+    
+    /**
+     * Creates a copy of a shared style sheet for a single caller. The rules are not copied.
+     * @param src the source style sheet
+     * @return the new style sheet containing the same rules
+     */
+    private static StyleSheet copyStyleSheet(StyleSheet src)
+    {
+        final StyleSheet ret = CSSFactory.getRuleFactory().createStyleSheet();
+        ret.addAll(src);
+        ret.setOrigin(src.getOrigin());
+        return ret;
+    }
+    
+    /**
+     * Parses a user agent style sheet.
+     * @param css the style sheet source
+     * @return the parsed style sheet or an empty style sheet when parsing failed
+     */
+    private static StyleSheet parseAgentStyleSheet(String css)
+    {
+        StyleSheet ret;
+        try {
+            ret = CSSFactory.parseString(css, null);
+        } catch (IOException e) {
+            log.error("I/O Error: " + e.getMessage());
+            ret = CSSFactory.getRuleFactory().createStyleSheet();
+        } catch (CSSException e) {
+            log.error("CSS Error: " + e.getMessage());
+            ret = CSSFactory.getRuleFactory().createStyleSheet();
+        }
+        ret.setOrigin(StyleSheet.Origin.AGENT);
+        return ret;
+    }
+    
     /**
      * Loads an internal style sheet from resource. 
      * @param name
@@ -98,4 +175,23 @@ public class CSSNorm
         }
     }
     
+    //=================================================================================
+    
+    // lazy holders: the style sheets are parsed upon the first use in a thread-safe way
+    
+    private static class StdHolder
+    {
+        static final StyleSheet sheet = parseAgentStyleSheet(stdStyleSheet());
+    }
+    
+    private static class UserHolder
+    {
+        static final StyleSheet sheet = parseAgentStyleSheet(userStyleSheet());
+    }
+    
+    private static class FormsHolder
+    {
+        static final StyleSheet sheet = parseAgentStyleSheet(formsStyleSheet());
+    }
+    
 }
@@ -0,0 +1,186 @@
+/*
+ * CachedStyleSheet.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:53:26 by agent
+ */
+package org.fit.cssbox.css;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cz.vutbr.web.css.StyleSheet;
+
+/**
+ * An immutable entry of the {@link StyleSheetCache}: a parsed style sheet together with
+ * the data used for its validation. Apart from the validation data of the style sheet itself,
+ * the entry contains the validation data of all the imported style sheets.
+ *
+ * @author agent
+ */
+public class CachedStyleSheet
+{
+    private final StyleSheet sheet;
+    private final String etag;
+    private final String lastModified;
+    private final String contentHash;
+    private final long size;
+    private final long expires;
+    private final Map<String, Import> imports;
+
+
+    /**
+     * Creates a new cache entry.
+     * @param sheet the parsed style sheet
+     * @param etag the HTTP entity tag or {@code null} when not available
+     * @param lastModified the last modification time as provided by the server or {@code null} when not available
+     * @param contentHash the hash of the style sheet source data
+     * @param size the size of the style sheet source data in bytes
+     * @param expires the time (in milliseconds since the epoch) until the style sheet may be used without validation
+     * @param imports the validation data of the imported style sheets indexed by their absolute URLs
+     */
+    public CachedStyleSheet(StyleSheet sheet, String etag, String lastModified, String contentHash, long size, long expires,
+            Map<String, Import> imports)
+    {
+        this.sheet = sheet;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.size = size;
+        this.expires = expires;
+        this.imports = Collections.unmodifiableMap(new LinkedHashMap<>(imports));
+    }
+
+    public StyleSheet getSheet()
+    {
+        return sheet;
+    }
+
+    public String getEtag()
+    {
+        return etag;
+    }
+
+    public String getLastModified()
+    {
+        return lastModified;
+    }
+
+    public String getContentHash()
+    {
+        return contentHash;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    public long getExpires()
+    {
+        return expires;
+    }
+
+    /**
+     * Obtains the validation data of the imported style sheets (including the nested imports).
+     * @return the validation data indexed by the absolute style sheet URLs
+     */
+    public Map<String, Import> getImports()
+    {
+        return imports;
+    }
+
+    /**
+     * Checks whether the style sheet may be used without validation.
+     * @return {@code true} when the style sheet has not expired yet
+     */
+    public boolean isFresh()
+    {
+        return System.currentTimeMillis() < expires;
+    }
+
+    /**
+     * Creates a copy of the entry with the new validation data. This is used when the cached
+     * style sheet has been successfully validated.
+     * @param etag the new entity tag (or {@code null} for keeping the current one)
+     * @param lastModified the new last modification time (or {@code null} for keeping the current one)
+     * @param expires the new expiration time
+     * @param imports the new validation data of the imported style sheets
+     * @return the new entry
+     */
+    public CachedStyleSheet revalidated(String etag, String lastModified, long expires, Map<String, Import> imports)
+    {
+        return new CachedStyleSheet(sheet,
+                (etag != null) ? etag : this.etag,
+                (lastModified != null) ? lastModified : this.lastModified,
+                contentHash, size, expires, imports);
+    }
+
+    //=========================================================================
+
+    /**
+     * The validation data of an imported style sheet.
+     */
+    public static class Import
+    {
+        private final String contentHash;
+        private final String etag;
+        private final String lastModified;
+
+        /**
+         * Creates the validation data of an imported style sheet.
+         * @param contentHash the hash of the style sheet source data
+         * @param etag the HTTP entity tag or {@code null} when not available
+         * @param lastModified the last modification time as provided by the server or {@code null} when not available
+         */
+        public Import(String contentHash, String etag, String lastModified)
+        {
+            this.contentHash = contentHash;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public String getContentHash()
+        {
+            return contentHash;
+        }
+
+        public String getEtag()
+        {
+            return etag;
+        }
+
+        public String getLastModified()
+        {
+            return lastModified;
+        }
+
+        /**
+         * Creates a copy of the validation data with the new entity tag and modification time.
+         * @param etag the new entity tag (or {@code null} for keeping the current one)
+         * @param lastModified the new last modification time (or {@code null} for keeping the current one)
+         * @return the new validation data
+         */
+        public Import revalidated(String etag, String lastModified)
+        {
+            return new Import(contentHash,
+                    (etag != null) ? etag : this.etag,
+                    (lastModified != null) ? lastModified : this.lastModified);
+        }
+    }
+
+}
@@ -30,11 +30,15 @@ import org.w3c.dom.*;
 
 import cz.vutbr.web.css.CSSException;
 import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.CombinedSelector;
 import cz.vutbr.web.css.MediaSpec;
 import cz.vutbr.web.css.NetworkProcessor;
 import cz.vutbr.web.css.NodeData;
 import cz.vutbr.web.css.RuleBlock;
+import cz.vutbr.web.css.RuleFactory;
 import cz.vutbr.web.css.RuleFontFace;
+import cz.vutbr.web.css.RuleMedia;
+import cz.vutbr.web.css.RulePage;
 import cz.vutbr.web.css.RuleSet;
 import cz.vutbr.web.css.Selector;
 import cz.vutbr.web.css.Selector.PseudoElementType;
@@ -63,6 +67,7 @@ public class DOMAnalyzer
     private StyleMap stylemap; //style map for DOM nodes
     private StyleMap istylemap; //style map with inheritance
     private FontTable fontTable; //local font table
+    private StyleSheetCache styleSheetCache; //cache of the parsed external style sheets
     
     /** The origin of a style sheet */
     public enum Origin 
@@ -154,6 +159,27 @@ public class DOMAnalyzer
         this.encoding = encoding;
     }
 
+    /**
+     * Obtains the cache of the parsed external style sheets.
+     * @return the cache or {@code null} when no cache is used
+     */
+    public StyleSheetCache getStyleSheetCache()
+    {
+        return styleSheetCache;
+    }
+
+    /**
+     * Sets the cache used for the external style sheets loaded by {@link #getStyleSheets()} and
+     * {@link #loadStyleSheet(URL, String, String, Origin)}. The parsed style sheets obtained from
+     * the cache are shared by all the analyzers using the same cache (typically the cache obtained
+     * from {@link org.fit.cssbox.layout.BrowserConfig#getStyleSheetCache()}). By default, no cache is used.
+     * @param styleSheetCache the cache to be used or {@code null} for no caching
+     */
+    public void setStyleSheetCache(StyleSheetCache styleSheetCache)
+    {
+        this.styleSheetCache = styleSheetCache;
+    }
+
     /**
      * Returns the type of the current medium used.
 	 * @return the media type according to CSS
@@ -369,8 +395,7 @@ public class DOMAnalyzer
     public void getStyleSheets(String media)
     {
     	this.media = new MediaSpec(media);
-        StyleSheet newsheet = CSSFactory.getUsedStyles(doc, encoding, baseUrl, this.media);
-        styles.add(newsheet);
+        loadUsedStyles();
     }
 
     /** 
@@ -382,8 +407,7 @@ public class DOMAnalyzer
     public void getStyleSheets(MediaSpec media)
     {
         this.media = media;
-        StyleSheet newsheet = CSSFactory.getUsedStyles(doc, encoding, baseUrl, this.media);
-        styles.add(newsheet);
+        loadUsedStyles();
     }
 
     /** 
@@ -434,8 +458,14 @@ public class DOMAnalyzer
     public void loadStyleSheet(URL base, String href, String encoding, Origin origin)
     {
         try {
-            StyleSheet newsheet = CSSFactory.parse(new URL(base, href), encoding);
-            newsheet.setOrigin(translateOrigin(origin));
+            StyleSheet newsheet;
+            if (styleSheetCache != null)
+                newsheet = new StyleSheetLoader(styleSheetCache).load(new URL(base, href), encoding, translateOrigin(origin));
+            else
+            {
+                newsheet = CSSFactory.parse(new URL(base, href), encoding);
+                newsheet.setOrigin(translateOrigin(origin));
+            }
             styles.add(newsheet);
         } catch (IOException e) {
             log.error("I/O Error: "+e.getMessage());
@@ -457,8 +487,14 @@ public class DOMAnalyzer
     public void loadStyleSheet(URL base, String href, String encoding, Origin origin, NetworkProcessor processor)
     {
         try {
-            StyleSheet newsheet = CSSFactory.parse(new URL(base, href), processor, encoding);
-            newsheet.setOrigin(translateOrigin(origin));
+            StyleSheet newsheet;
+            if (styleSheetCache != null)
+                newsheet = new StyleSheetLoader(styleSheetCache, processor).load(new URL(base, href), encoding, translateOrigin(origin));
+            else
+            {
+                newsheet = CSSFactory.parse(new URL(base, href), processor, encoding);
+                newsheet.setOrigin(translateOrigin(origin));
+            }
             styles.add(newsheet);
         } catch (IOException e) {
             log.error("I/O Error: "+e.getMessage());
@@ -527,6 +563,90 @@ public class DOMAnalyzer
         }
     }
 	
+    /**
+     * Adds an already parsed style sheet to the end of the used stylesheet lists. The style sheet
+     * is used as it is including its origin and it is not modified by the analyzer. Therefore, the
+     * same style sheet instance may be shared by multiple analyzers (e.g. the pre-parsed user agent
+     * style sheets obtained from {@link CSSNorm#getStdStyleSheet()}).
+     * @param sheet the style sheet to be added
+     */
+    public void addStyleSheet(StyleSheet sheet)
+    {
+        styles.add(sheet);
+        fontTable = null; //force recomputing the font table the next time
+    }
+    
+    /**
+     * Removes a style sheet from the used style sheet list. The style sheet instance is removed even
+     * when another equal style sheet is used. {@link #recomputeStyles()} should be called afterwards.
+     * @param sheet the style sheet to be removed
+     * @return {@code true} when the style sheet has been used
+     */
+    public boolean removeStyleSheet(StyleSheet sheet)
+    {
+        for (int i = 0; i < styles.size(); i++)
+        {
+            if (styles.get(i) == sheet)
+            {
+                styles.remove(i);
+                fontTable = null;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Obtains the style sheets used by the analyzer in the order of their use. The returned
+     * style sheets may be added to another analyzer of the same document using
+     * {@link #addStyleSheet(StyleSheet)} in order to avoid loading and parsing them again.
+     * @return an unmodifiable list of the style sheets
+     */
+    public List<StyleSheet> getUsedStyleSheets()
+    {
+        return Collections.unmodifiableList(new ArrayList<StyleSheet>(styles));
+    }
+    
+    /**
+     * Obtains the style sheets used by the analyzer without the inline style definitions that are
+     * bound to the individual elements of the document. Unlike {@link #getUsedStyleSheets()}, the
+     * returned style sheets may be added to an analyzer of a copy of the document; the inline style
+     * definitions of the copy may be obtained using {@link #getInlineStyleSheet(Element)}.
+     * @return an unmodifiable list of the style sheets
+     */
+    public List<StyleSheet> getSharedStyleSheets()
+    {
+        final List<StyleSheet> ret = new ArrayList<StyleSheet>(styles.size());
+        for (StyleSheet sheet : styles)
+        {
+            boolean inline = false;
+            for (RuleBlock<?> rule : sheet)
+            {
+                if (isInlineRule(rule))
+                {
+                    inline = true;
+                    break;
+                }
+            }
+            if (!inline)
+                ret.add(sheet);
+            else
+            {
+                //a copy without the inline rules; the original sheet may be shared
+                final StyleSheet copy = CSSFactory.getRuleFactory().createStyleSheet();
+                copy.setOrigin(sheet.getOrigin());
+                for (RuleBlock<?> rule : sheet)
+                {
+                    if (!isInlineRule(rule))
+                        copy.add(rule);
+                }
+                if (!copy.isEmpty())
+                    ret.add(copy);
+            }
+        }
+        return Collections.unmodifiableList(ret);
+    }
+    
 	/**
 	 * Forces recomputing the element styles. This method should be called when a new style sheet
 	 * has been added or a DOM has changed after some styles have been read from the analyzer.
@@ -539,6 +659,51 @@ public class DOMAnalyzer
 	    istylemap = null;
 	}
 	
+    /**
+     * Obtains all the {@code @page} rules contained in the used style sheets in the order of their appearance.
+     * @return the list of page rules
+     */
+    public List<RulePage> getPageRules()
+    {
+        final List<RulePage> ret = new ArrayList<RulePage>();
+        for (StyleSheet sheet : styles)
+        {
+            for (RuleBlock<?> block : sheet.asList())
+            {
+                if (block instanceof RulePage)
+                    ret.add((RulePage) block);
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * Evaluates all the media queries of the {@code @media} rules used in the style sheets
+     * for the given media specification. Comparing the results obtained for different media
+     * specifications may be used for checking whether a media change influences the element styles.
+     * @param spec the media specification to be used for evaluation
+     * @return a bit set where the n-th bit corresponds to the n-th {@code @media} rule and it is set
+     * when the rule applies for the given media specification
+     */
+    public BitSet evaluateMediaQueries(MediaSpec spec)
+    {
+        final BitSet ret = new BitSet();
+        int i = 0;
+        for (StyleSheet sheet : styles)
+        {
+            for (RuleBlock<?> block : sheet.asList())
+            {
+                if (block instanceof RuleMedia)
+                {
+                    if (spec.matchesOneOf(((RuleMedia) block).getMediaQueries()))
+                        ret.set(i);
+                    i++;
+                }
+            }
+        }
+        return ret;
+    }
+    
     /**
      * Gets all the style declarations for a particular element and computes 
      * the resulting element style.
@@ -740,6 +905,186 @@ public class DOMAnalyzer
             recursivePrintTags(child.item(i), level+1, p);   
     }
     
+    /**
+     * Loads the style sheets used by the document. When a style sheet cache is used, the linked
+     * and imported style sheets are obtained from the cache and only the embedded and inline style
+     * definitions are parsed.
+     */
+    private void loadUsedStyles()
+    {
+        if (styleSheetCache == null)
+            styles.add(CSSFactory.getUsedStyles(doc, encoding, baseUrl, media));
+        else
+        {
+            //linked and embedded style sheets in the document order
+            recursiveLoadUsedStyles(getRoot(), new StyleSheetLoader(styleSheetCache));
+            styles.add(getInlineStyleSheet(getRoot()));
+        }
+    }
+    
+    /**
+     * Creates a style sheet that contains the inline style definitions of the given subtree, i.e. the
+     * {@code style} attributes and the {@code XDefaultStyle} attributes created by
+     * {@link #attributesToStyles()}. The rules of the style sheet apply to the individual elements
+     * only; therefore, the style sheet cannot be used for another copy of the document.
+     * @param root the root element of the subtree
+     * @return the new style sheet
+     */
+    public StyleSheet getInlineStyleSheet(Element root)
+    {
+        final StyleSheet sheet = CSSFactory.getRuleFactory().createStyleSheet();
+        sheet.setOrigin(StyleSheet.Origin.AUTHOR);
+        recursiveGetInlineStyles(root, sheet);
+        return sheet;
+    }
+    
+    private void recursiveLoadUsedStyles(Element e, StyleSheetLoader loader)
+    {
+        if ("link".equalsIgnoreCase(e.getNodeName()))
+        {
+            if (isStyleSheetLink(e) && isCSSType(e) && matchesMedia(e.getAttribute("media")))
+            {
+                try {
+                    URL url = new URL(baseUrl, e.getAttribute("href").trim());
+                    String charset = e.getAttribute("charset");
+                    styles.add(loader.load(url, charset.isEmpty() ? encoding : charset, StyleSheet.Origin.AUTHOR));
+                } catch (IOException ex) {
+                    log.error("I/O Error: "+ex.getMessage());
+                } catch (CSSException ex) {
+                    log.error("CSS Error: "+ex.getMessage());
+                }
+            }
+        }
+        else if ("style".equalsIgnoreCase(e.getNodeName()))
+        {
+            if (isCSSType(e) && matchesMedia(e.getAttribute("media")))
+            {
+                try {
+                    //the imported style sheets are obtained using the loader and they precede the embedded rules
+                    final List<URL> imports = new ArrayList<>();
+                    StyleSheet newsheet = CSSFactory.parseString(e.getTextContent(), baseUrl, new NetworkProcessor() {
+                        @Override
+                        public InputStream fetch(URL url) throws IOException
+                        {
+                            imports.add(url);
+                            return new ByteArrayInputStream(new byte[0]);
+                        }
+                    });
+                    for (URL url : imports)
+                        loadImportedStyles(url, loader);
+                    newsheet.setOrigin(StyleSheet.Origin.AUTHOR);
+                    styles.add(newsheet);
+                } catch (IOException ex) {
+                    log.error("I/O Error: "+ex.getMessage());
+                } catch (CSSException ex) {
+                    log.error("CSS Error: "+ex.getMessage());
+                }
+            }
+        }
+        else
+        {
+            NodeList list = e.getChildNodes();
+            for (int i = 0; i < list.getLength(); i++)
+            {
+                if (list.item(i).getNodeType() == Node.ELEMENT_NODE)
+                    recursiveLoadUsedStyles((Element) list.item(i), loader);
+            }
+        }
+    }
+    
+    private void loadImportedStyles(URL url, StyleSheetLoader loader)
+    {
+        try {
+            styles.add(loader.load(url, encoding, StyleSheet.Origin.AUTHOR));
+        } catch (IOException ex) {
+            log.error("I/O Error: "+ex.getMessage());
+        } catch (CSSException ex) {
+            log.error("CSS Error: "+ex.getMessage());
+        }
+    }
+    
+    private void recursiveGetInlineStyles(Element e, StyleSheet sheet)
+    {
+        addInlineRule(e, e.getAttribute("style"), true, sheet);
+        addInlineRule(e, e.getAttribute("XDefaultStyle"), false, sheet);
+        NodeList list = e.getChildNodes();
+        for (int i = 0; i < list.getLength(); i++)
+        {
+            if (list.item(i).getNodeType() == Node.ELEMENT_NODE)
+                recursiveGetInlineStyles((Element) list.item(i), sheet);
+        }
+    }
+    
+    /**
+     * Parses the inline declarations of an element and adds them to a style sheet as a rule
+     * bound to the element.
+     */
+    private void addInlineRule(Element e, String decls, boolean inlinePriority, StyleSheet sheet)
+    {
+        if (decls.trim().isEmpty())
+            return;
+        try {
+            final RuleFactory rf = CSSFactory.getRuleFactory();
+            for (RuleBlock<?> rule : CSSFactory.parseString("* {" + decls + "}", baseUrl))
+            {
+                if (rule instanceof RuleSet)
+                {
+                    final Selector sel = (Selector) rf.createSelector().unlock();
+                    sel.add(rf.createElementDOM(e, inlinePriority));
+                    final CombinedSelector csel = (CombinedSelector) rf.createCombinedSelector().unlock();
+                    csel.add(sel);
+                    final RuleSet rs = (RuleSet) rf.createSet().unlock();
+                    rs.replaceAll((RuleSet) rule);
+                    rs.setSelectors(Collections.singletonList(csel));
+                    sheet.add(rs);
+                }
+            }
+        } catch (IOException ex) {
+            log.error("I/O Error: "+ex.getMessage());
+        } catch (CSSException ex) {
+            log.error("CSS Error: "+ex.getMessage());
+        }
+    }
+    
+    private boolean isStyleSheetLink(Element e)
+    {
+        boolean sheet = false;
+        for (String rel : e.getAttribute("rel").toLowerCase(Locale.ROOT).trim().split("\\s+"))
+        {
+            if (rel.equals("alternate"))
+                return false;
+            else if (rel.equals("stylesheet"))
+                sheet = true;
+        }
+        return sheet && !e.getAttribute("href").trim().isEmpty();
+    }
+    
+    private boolean isCSSType(Element e)
+    {
+        final String type = e.getAttribute("type").trim();
+        return type.isEmpty() || type.equalsIgnoreCase("text/css");
+    }
+    
+    private boolean matchesMedia(String mediaAttr)
+    {
+        if (mediaAttr == null || mediaAttr.trim().isEmpty())
+            return true;
+        else
+            return media.matchesOneOf(CSSFactory.parseMediaQuery(mediaAttr));
+    }
+    
+    private boolean isInlineRule(RuleBlock<?> rule)
+    {
+        if (rule instanceof RuleSet)
+        {
+            final CombinedSelector[] sel = ((RuleSet) rule).getSelectors();
+            return sel.length > 0 && !sel[0].isEmpty() && !sel[0].get(0).isEmpty()
+                    && sel[0].get(0).get(0) instanceof Selector.ElementDOM;
+        }
+        else
+            return false;
+    }
+    
     /**
      * Translates the origin from the CSSBox API to jStyleParser API
      * (in order not to expose the jStyleParser API in CSSBox)
@@ -24,9 +24,9 @@ import java.awt.FontFormatException;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.fit.cssbox.io.DocumentSource;
 
@@ -43,13 +43,21 @@ public class FontDecoder
         supportedFormats.add("truetype");
     }
     
-    private static Map<URL, String> registeredFonts = new HashMap<>();
+    private static Map<URL, String> registeredFonts = new ConcurrentHashMap<>();
 
+    /**
+     * @deprecated The web fonts are registered in the {@link org.fit.cssbox.awt.WebFontRegistry} now.
+     */
+    @Deprecated
     public static void registerFont(URL url, String family)
     {
         registeredFonts.put(url, family);
     }
     
+    /**
+     * @deprecated The web fonts are registered in the {@link org.fit.cssbox.awt.WebFontRegistry} now.
+     */
+    @Deprecated
     public static String findRegisteredFont(URL url)
     {
         return registeredFonts.get(url);
@@ -19,36 +19,213 @@
  */
 package org.fit.cssbox.css;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import cz.vutbr.web.css.CSSProperty;
 import cz.vutbr.web.css.RuleFontFace;
 import cz.vutbr.web.css.RuleFontFace.Source;
 
 /**
  * A table of registered font sources.
  * 
+ * The best matching sources are looked up using an index that is built on the first lookup and
+ * discarded when the table is modified using {@code put}, {@code putAll}, {@code putIfAbsent},
+ * {@code remove} or {@code clear}. The index groups the entries by the normalized family name
+ * and contains the best matching entry for each combination of the required weight and style;
+ * the lookup is therefore a hash map access. The table may be used by concurrent layouts as
+ * long as it is not modified.
+ * 
  * @author burgetr
  */
 public class FontTable extends LinkedHashMap<FontSpec, List<RuleFontFace.Source>>
 {
     private static final long serialVersionUID = 1L;
 
+    /** Maximal number of the remembered family names; the memo starts over when exceeded */
+    private static final int MAX_NAMES = 1024;
+
+    private transient volatile Index index;
+
     
     public List<RuleFontFace.Source> findBestMatch(FontSpec font)
     {
-        List<RuleFontFace.Source> ret = null;
-        int max = 0;
-        for (Map.Entry<FontSpec, List<Source>> entry : entrySet())
+        if (font.getFamily() == null)
+            return null;
+        return getIndex().find(font.getFamily()).findBest(font);
+    }
+    
+    @Override
+    public List<Source> put(FontSpec key, List<Source> value)
+    {
+        index = null;
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends FontSpec, ? extends List<Source>> m)
+    {
+        index = null;
+        super.putAll(m);
+    }
+
+    @Override
+    public List<Source> putIfAbsent(FontSpec key, List<Source> value)
+    {
+        index = null;
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public List<Source> remove(Object key)
+    {
+        index = null;
+        return super.remove(key);
+    }
+
+    @Override
+    public void clear()
+    {
+        index = null;
+        super.clear();
+    }
+
+    //=========================================================================
+    
+    private Index getIndex()
+    {
+        Index ret = index;
+        if (ret == null)
         {
-            if (entry.getKey().match(font) > max)
+            synchronized (this)
             {
-                ret = entry.getValue();
-                max = entry.getKey().match(font);
+                ret = index;
+                if (ret == null)
+                    index = ret = new Index(this);
             }
         }
         return ret;
     }
     
+    /**
+     * The entries of the table grouped by the normalized family names.
+     */
+    private static class Index
+    {
+        private final Map<String, Family> families;
+        /** The families found for the family names as used in the lookups */
+        private final ConcurrentHashMap<String, Family> names;
+        
+        public Index(FontTable table)
+        {
+            final Map<String, List<Map.Entry<FontSpec, List<Source>>>> groups = new HashMap<>();
+            for (Map.Entry<FontSpec, List<Source>> entry : table.entrySet())
+            {
+                final String family = entry.getKey().getFamily();
+                if (family != null)
+                {
+                    final String key = family.toLowerCase(Locale.ROOT);
+                    List<Map.Entry<FontSpec, List<Source>>> group = groups.get(key);
+                    if (group == null)
+                    {
+                        group = new ArrayList<>();
+                        groups.put(key, group);
+                    }
+                    group.add(entry);
+                }
+            }
+            families = new HashMap<>(groups.size() * 2);
+            for (Map.Entry<String, List<Map.Entry<FontSpec, List<Source>>>> group : groups.entrySet())
+                families.put(group.getKey(), new Family(group.getValue()));
+            names = new ConcurrentHashMap<>();
+        }
+        
+        public Family find(String family)
+        {
+            Family ret = names.get(family);
+            if (ret == null)
+            {
+                ret = families.get(family.toLowerCase(Locale.ROOT));
+                if (ret == null)
+                    ret = Family.NONE;
+                if (names.size() >= MAX_NAMES)
+                    names.clear();
+                names.put(family, ret);
+            }
+            return ret;
+        }
+    }
+    
+    /**
+     * The entries of a single family with the best match precomputed for all the required weights
+     * and styles.
+     */
+    private static class Family
+    {
+        public static final Family NONE = new Family(new ArrayList<Map.Entry<FontSpec, List<Source>>>());
+        
+        /** Number of the style slots; the last one is used for no style */
+        private static final int STYLES = CSSProperty.FontStyle.values().length + 1;
+        
+        /** The best sources for [bold * STYLES + style] */
+        private final List<?>[] best;
+        
+        public Family(List<Map.Entry<FontSpec, List<Source>>> entries)
+        {
+            best = new List<?>[2 * STYLES];
+            final CSSProperty.FontStyle[] styles = CSSProperty.FontStyle.values();
+            for (int bold = 0; bold < 2; bold++)
+            {
+                for (int si = 0; si < STYLES; si++)
+                {
+                    final CSSProperty.FontStyle style = (si < styles.length) ? styles[si] : null;
+                    List<Source> ret = null;
+                    int max = 0;
+                    for (Map.Entry<FontSpec, List<Source>> entry : entries)
+                    {
+                        final int score = score(entry.getKey(), bold == 1, style);
+                        if (score > max)
+                        {
+                            ret = entry.getValue();
+                            max = score;
+                        }
+                    }
+                    best[bold * STYLES + si] = ret;
+                }
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        public List<Source> findBest(FontSpec font)
+        {
+            if (this == NONE)
+                return null;
+            final int bold = FontSpec.representsBold(font.getWeight()) ? 1 : 0;
+            final int si = (font.getStyle() == null) ? STYLES - 1 : font.getStyle().ordinal();
+            return (List<Source>) best[bold * STYLES + si];
+        }
+        
+        /**
+         * Computes the same score as {@link FontSpec#match(FontSpec)} for a font of the same family.
+         */
+        private static int score(FontSpec spec, boolean bold, CSSProperty.FontStyle style)
+        {
+            int ret = 100;
+            if (spec.getWeight() == null)
+                ret++;
+            else if (FontSpec.representsBold(spec.getWeight()) == bold)
+                ret += 10;
+            if (spec.getStyle() == null)
+                ret++;
+            else if (spec.getStyle() == style)
+                ret += 10;
+            return ret;
+        }
+    }
+    
 }
@@ -393,13 +393,32 @@ public class HTMLNorm
         //normalize tables
         NodeList tables = doc.getElementsByTagName("table");
         for (int i = 0; i < tables.getLength(); i++)
+            normalizeTable(tables.item(i));
+    }
+
+    /**
+     * Normalizes a DOM subtree in the same way as {@link #normalizeHTMLTree(Document)}. This may be
+     * used when new content is added to an already normalized document. Note that the nodes that
+     * cannot be contained in a table are moved before the table, i.e. possibly out of the subtree
+     * when the root element is a table.
+     * @param root the root element of the processed subtree
+     */
+    public static void normalizeHTMLTree(Element root)
+    {
+        if (root.getTagName().equalsIgnoreCase("table"))
+            normalizeTable(root);
+        NodeList tables = root.getElementsByTagName("table");
+        for (int i = 0; i < tables.getLength(); i++)
+            normalizeTable(tables.item(i));
+    }
+
+    private static void normalizeTable(Node table)
+    {
+        Vector<Node> nodes = new Vector<Node>();
+        recursiveFindBadNodesInTable(table, null, nodes);
+        for (Node n : nodes)
         {
-            Vector<Node> nodes = new Vector<Node>();
-            recursiveFindBadNodesInTable(tables.item(i), null, nodes);
-            for (Node n : nodes)
-            {
-                moveSubtreeBefore(n, tables.item(i));
-            }
+            moveSubtreeBefore(n, table);
         }
     }
 
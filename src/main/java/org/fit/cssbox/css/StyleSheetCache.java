@@ -0,0 +1,55 @@
+/*
+ * StyleSheetCache.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:53:26 by agent
+ */
+package org.fit.cssbox.css;
+
+import java.net.URL;
+
+import cz.vutbr.web.css.StyleSheet;
+
+/**
+ * A generic cache for storing and re-using the parsed external style sheets. It uses the absolute
+ * style sheet URL together with the style sheet origin as a unique identifier (the origin is stored
+ * in the parsed style sheet); the cached entries carry the validation data
+ * (the HTTP entity tag, the last modification time and the content hash) that are used for
+ * checking whether the cached style sheet is still valid.
+ *
+ * The cached style sheets are shared by all the analyzers using the cache and they must not be
+ * modified. The implementations must be thread-safe.
+ *
+ * @author agent
+ */
+public interface StyleSheetCache
+{
+    /**
+     * Adds a new parsed style sheet to the cache.
+     * @param url the absolute style sheet URL
+     * @param origin the style sheet origin
+     * @param sheet the parsed style sheet with its validation data
+     */
+    void put(URL url, StyleSheet.Origin origin, CachedStyleSheet sheet);
+
+    /**
+     * Retrieves a style sheet from the cache based on its URL and origin.
+     * @param url the absolute style sheet URL
+     * @param origin the style sheet origin
+     * @return the cached style sheet or {@code null} when there is no such style sheet in the cache
+     */
+    CachedStyleSheet get(URL url, StyleSheet.Origin origin);
+}
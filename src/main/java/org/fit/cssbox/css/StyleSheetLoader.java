@@ -0,0 +1,321 @@
+/*
+ * StyleSheetLoader.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:53:26 by agent
+ */
+package org.fit.cssbox.css;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cz.vutbr.web.css.CSSException;
+import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.NetworkProcessor;
+import cz.vutbr.web.css.StyleSheet;
+
+/**
+ * Loads the external style sheets using a {@link StyleSheetCache}. A cached style sheet is used
+ * without any validation until it expires according to the HTTP {@code Cache-Control} or
+ * {@code Expires} headers. Then, it is validated using a conditional HTTP request with the stored
+ * entity tag or the last modification time. When the style sheet source must be downloaded again,
+ * the parsed style sheet is still reused when the hash of the source data has not changed.
+ * The style sheets imported using {@code @import} are validated in the same way (using conditional
+ * requests and the hashes of their source data) whenever the main style sheet is validated. The style
+ * sheets are cached separately for each origin.
+ *
+ * When a network processor is used, the HTTP headers are not available and the validation is
+ * only based on the content hash.
+ *
+ * @author agent
+ */
+public class StyleSheetLoader
+{
+    private static Logger log = LoggerFactory.getLogger(StyleSheetLoader.class);
+
+    private final StyleSheetCache cache;
+    private final NetworkProcessor processor;
+
+
+    /**
+     * Creates a new loader that uses the standard URL connections.
+     * @param cache the style sheet cache to be used
+     */
+    public StyleSheetLoader(StyleSheetCache cache)
+    {
+        this(cache, null);
+    }
+
+    /**
+     * Creates a new loader.
+     * @param cache the style sheet cache to be used
+     * @param processor the network processor used for obtaining the style sheets or {@code null}
+     * for the standard URL connections
+     */
+    public StyleSheetLoader(StyleSheetCache cache, NetworkProcessor processor)
+    {
+        this.cache = cache;
+        this.processor = processor;
+    }
+
+    /**
+     * Obtains a parsed style sheet from the given URL. The style sheet is taken from the cache when
+     * it is still valid; otherwise, it is loaded, parsed (including the imported style sheets)
+     * and stored in the cache. The returned style sheet may be shared and it must not be modified.
+     * @param url the absolute style sheet URL
+     * @param encoding the default character encoding for the style sheet (use {@code null} for default system encoding)
+     * @param origin the style sheet origin
+     * @return the parsed style sheet
+     * @throws IOException
+     * @throws CSSException
+     */
+    public StyleSheet load(URL url, String encoding, StyleSheet.Origin origin) throws IOException, CSSException
+    {
+        final CachedStyleSheet cached = cache.get(url, origin);
+        if (cached != null && cached.isFresh())
+            return cached.getSheet();
+
+        final Response rsp = (cached == null) ? request(url, false, null, null)
+                : request(url, true, cached.getEtag(), cached.getLastModified());
+        byte[] data = rsp.data;
+        String hash = (data == null) ? cached.getContentHash() : computeHash(data);
+        if (cached != null && hash.equals(cached.getContentHash()))
+        {
+            final Map<String, CachedStyleSheet.Import> imports = validateImports(cached);
+            if (imports != null)
+            {
+                log.debug("Style sheet content not changed: {}", url);
+                cache.put(url, origin, cached.revalidated(rsp.etag, rsp.lastModified, rsp.expires, imports));
+                return cached.getSheet();
+            }
+            else if (data == null)
+            {
+                data = fetch(url); //the main style sheet must be parsed again
+                hash = computeHash(data);
+            }
+        }
+
+        log.debug("Parsing style sheet {}", url);
+        final PreloadedProcessor pp = new PreloadedProcessor(url, data);
+        final StyleSheet sheet = CSSFactory.parse(url, pp, encoding);
+        sheet.setOrigin(origin);
+        cache.put(url, origin, new CachedStyleSheet(sheet, rsp.etag, rsp.lastModified, hash, data.length + pp.importSize, rsp.expires, pp.imports));
+        return sheet;
+    }
+
+    //=========================================================================
+
+    /**
+     * Computes the time until the loaded data may be used without validation.
+     * @param con the connection used for loading the data
+     * @return the expiration time in milliseconds since the epoch
+     */
+    protected long computeExpiration(URLConnection con)
+    {
+        final String cc = con.getHeaderField("Cache-Control");
+        if (cc != null)
+        {
+            for (String directive : cc.toLowerCase(Locale.ROOT).split(","))
+            {
+                directive = directive.trim();
+                if (directive.equals("no-cache") || directive.equals("no-store"))
+                    return 0;
+                else if (directive.startsWith("max-age="))
+                {
+                    try {
+                        return System.currentTimeMillis() + Long.parseLong(directive.substring(8).trim()) * 1000;
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return con.getExpiration();
+    }
+
+    /**
+     * Obtains the style sheet source data. When a cached version is available, a conditional request
+     * is used and no data is obtained when the style sheet has not been modified.
+     * @param url the style sheet URL
+     * @param conditional {@code true} when a cached version of the style sheet is available
+     * @param etag the entity tag of the cached version or {@code null}
+     * @param lastModified the modification time of the cached version or {@code null}
+     * @return the response
+     * @throws IOException
+     */
+    private Response request(URL url, boolean conditional, String etag, String lastModified) throws IOException
+    {
+        final Response rsp = new Response();
+        if (processor != null)
+        {
+            rsp.data = fetch(url);
+            return rsp;
+        }
+        final URLConnection con = url.openConnection();
+        if (conditional && con instanceof HttpURLConnection)
+        {
+            if (etag != null)
+                con.setRequestProperty("If-None-Match", etag);
+            if (lastModified != null)
+                con.setRequestProperty("If-Modified-Since", lastModified);
+        }
+        con.connect();
+        rsp.etag = con.getHeaderField("ETag");
+        rsp.lastModified = con.getHeaderField("Last-Modified");
+        rsp.expires = computeExpiration(con);
+        boolean notModified = false;
+        if (conditional)
+        {
+            if (con instanceof HttpURLConnection)
+                notModified = ((HttpURLConnection) con).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+            else //e.g. local files, compare the modification time
+                notModified = rsp.lastModified != null && rsp.lastModified.equals(lastModified);
+        }
+        if (notModified)
+        {
+            log.debug("Style sheet not modified: {}", url);
+            if (con instanceof HttpURLConnection)
+                ((HttpURLConnection) con).disconnect();
+        }
+        else
+        {
+            try (InputStream is = con.getInputStream())
+            {
+                rsp.data = readAll(is);
+            }
+        }
+        return rsp;
+    }
+
+    /**
+     * Validates the imported style sheets of a cached style sheet using conditional requests.
+     * @param cached the cached style sheet
+     * @return the updated validation data of the imported style sheets or {@code null} when some
+     * of the imported style sheets has changed
+     */
+    private Map<String, CachedStyleSheet.Import> validateImports(CachedStyleSheet cached)
+    {
+        final Map<String, CachedStyleSheet.Import> ret = new LinkedHashMap<>();
+        for (Map.Entry<String, CachedStyleSheet.Import> entry : cached.getImports().entrySet())
+        {
+            final CachedStyleSheet.Import imp = entry.getValue();
+            try {
+                final Response rsp = request(new URL(entry.getKey()), true, imp.getEtag(), imp.getLastModified());
+                if (rsp.data != null && !computeHash(rsp.data).equals(imp.getContentHash()))
+                {
+                    log.debug("Imported style sheet changed: {}", entry.getKey());
+                    return null;
+                }
+                ret.put(entry.getKey(), imp.revalidated(rsp.etag, rsp.lastModified));
+            } catch (IOException e) {
+                return null; //try to parse again
+            }
+        }
+        return ret;
+    }
+
+    private byte[] fetch(URL url) throws IOException
+    {
+        try (InputStream is = (processor != null) ? processor.fetch(url) : url.openStream())
+        {
+            return readAll(is);
+        }
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[8192];
+        int n;
+        while ((n = is.read(buf)) != -1)
+            out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+
+    private static String computeHash(byte[] data)
+    {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); //SHA-256 is always available
+        }
+    }
+
+    //=========================================================================
+
+    /**
+     * A network processor that provides the already loaded data of the main style sheet
+     * and loads the remaining (imported) style sheets normally. The validation data of the
+     * imported style sheets is recorded for their later validation.
+     */
+    private class PreloadedProcessor implements NetworkProcessor
+    {
+        private final URL url;
+        private final byte[] data;
+        public final Map<String, CachedStyleSheet.Import> imports = new LinkedHashMap<>();
+        public long importSize;
+
+        public PreloadedProcessor(URL url, byte[] data)
+        {
+            this.url = url;
+            this.data = data;
+        }
+
+        @Override
+        public InputStream fetch(URL target) throws IOException
+        {
+            if (target.toExternalForm().equals(url.toExternalForm()))
+                return new ByteArrayInputStream(data);
+            else
+            {
+                final Response rsp = request(target, false, null, null);
+                imports.put(target.toExternalForm(), new CachedStyleSheet.Import(computeHash(rsp.data), rsp.etag, rsp.lastModified));
+                importSize += rsp.data.length;
+                return new ByteArrayInputStream(rsp.data);
+            }
+        }
+    }
+
+    /**
+     * The result of a style sheet request.
+     */
+    private static class Response
+    {
+        /** The source data or {@code null} when not modified */
+        public byte[] data;
+        public String etag;
+        public String lastModified;
+        public long expires;
+    }
+
+}
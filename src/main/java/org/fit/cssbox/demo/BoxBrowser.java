@@ -172,9 +172,9 @@ public class BoxBrowser
             da.setDefaultEncoding(encoding);
             da.setMediaSpec(media);
             da.attributesToStyles();
-            da.addStyleSheet(null, CSSNorm.stdStyleSheet(), DOMAnalyzer.Origin.AGENT);
-            da.addStyleSheet(null, CSSNorm.userStyleSheet(), DOMAnalyzer.Origin.AGENT);
-            da.addStyleSheet(null, CSSNorm.formsStyleSheet(), DOMAnalyzer.Origin.AGENT);
+            da.addStyleSheet(CSSNorm.getStdStyleSheet());
+            da.addStyleSheet(CSSNorm.getUserStyleSheet());
+            da.addStyleSheet(CSSNorm.getFormsStyleSheet());
             da.getStyleSheets();
             
             contentCanvas = new BrowserCanvas(da.getRoot(), da, docSource.getURL());
@@ -287,36 +287,20 @@ public class BoxBrowser
     }
     
 	/**
-	 * Locates a box from its position
+	 * Locates the smallest box at the given position using the box index of the viewport
 	 */
-	private DefaultMutableTreeNode locateBox(DefaultMutableTreeNode root, int x, int y)
+	private DefaultMutableTreeNode locateBox(int x, int y)
 	{
-	    DefaultMutableTreeNode found = null;
-	    Box box = (Box) root.getUserObject();
-	    Rectangle bounds = box.getAbsoluteBounds();
-	    if (bounds.contains(x, y))
-	        found = root;
-	    
-        //find if there is something smallest that fits among the child boxes
-	    for (int i = 0; i < root.getChildCount(); i++)
-        {
-            DefaultMutableTreeNode inside = locateBox((DefaultMutableTreeNode) root.getChildAt(i), x, y);
-            if (inside != null)
-            {
-                if (found == null)
-                    found = inside;
-                else
-                {
-                    Box fbox = (Box) found.getUserObject();
-                    Box ibox = (Box) inside.getUserObject();
-                    if (ibox.getAbsoluteBounds().width * ibox.getAbsoluteBounds().height <
-                            fbox.getAbsoluteBounds().width * fbox.getAbsoluteBounds().height)
-                        found = inside;
-                }
-            }
-        }
-            
-        return found;
+	    Viewport viewport = ((BrowserCanvas) contentCanvas).getEngine().getViewport();
+	    Box found = null;
+	    for (Box box : viewport.boxesAt(x, y))
+	    {
+	        if (found == null || 
+	                box.getAbsoluteBounds().width * box.getAbsoluteBounds().height <
+	                found.getAbsoluteBounds().width * found.getAbsoluteBounds().height)
+	            found = box;
+	    }
+	    return (found == null) ? null : locateObjectInTree(root, found);
 	}
 	
     /**
@@ -343,7 +327,7 @@ public class BoxBrowser
      */
     public void canvasClick(int x, int y)
     {
-        DefaultMutableTreeNode node = locateBox(root, x, y);
+        DefaultMutableTreeNode node = locateBox(x, y);
         if (node != null)
         {
             TreePath select = new TreePath(node.getPath());
@@ -804,7 +788,7 @@ public class BoxBrowser
                 {
                     if (contentCanvas != null && contentCanvas instanceof BrowserCanvas)
                     {
-                        ((BrowserCanvas) contentCanvas).createLayout(contentScroll.getSize(), contentScroll.getViewport().getViewRect());
+                        ((BrowserCanvas) contentCanvas).relayout(contentScroll.getSize(), contentScroll.getViewport().getViewRect());
                         contentScroll.repaint();
                         //new box tree
                         root = createBoxTree(((BrowserCanvas) contentCanvas).getEngine().getViewport());
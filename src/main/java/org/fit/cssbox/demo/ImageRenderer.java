@@ -53,6 +53,7 @@ public class ImageRenderer
     private boolean cropWindow = false;
     private boolean loadImages = true;
     private boolean loadBackgroundImages = true;
+    private boolean stripOutput = false;
 
     public ImageRenderer()
     {
@@ -76,6 +77,16 @@ public class ImageRenderer
         loadBackgroundImages = background;
     }
     
+    /**
+     * Enables painting and encoding the page by horizontal strips so that the memory used
+     * does not depend on the page height.
+     * @param stripOutput {@code true} for the strip output
+     */
+    public void setStripOutput(boolean stripOutput)
+    {
+        this.stripOutput = stripOutput;
+    }
+    
     /**
      * Renders the URL and prints the result to the specified output stream in the specified
      * format.
@@ -108,9 +119,9 @@ public class ImageRenderer
         DOMAnalyzer da = new DOMAnalyzer(doc, docSource.getURL());
         da.setMediaSpec(media);
         da.attributesToStyles(); //convert the HTML presentation attributes to inline styles
-        da.addStyleSheet(null, CSSNorm.stdStyleSheet(), DOMAnalyzer.Origin.AGENT); //use the standard style sheet
-        da.addStyleSheet(null, CSSNorm.userStyleSheet(), DOMAnalyzer.Origin.AGENT); //use the additional style sheet
-        da.addStyleSheet(null, CSSNorm.formsStyleSheet(), DOMAnalyzer.Origin.AGENT); //render form fields using css
+        da.addStyleSheet(CSSNorm.getStdStyleSheet()); //use the standard style sheet
+        da.addStyleSheet(CSSNorm.getUserStyleSheet()); //use the additional style sheet
+        da.addStyleSheet(CSSNorm.getFormsStyleSheet()); //render form fields using css
         da.getStyleSheets(); //load the author style sheets
         
         GraphicsEngine contentCanvas = new GraphicsEngine(da.getRoot(), da, docSource.getURL());
@@ -119,8 +130,13 @@ public class ImageRenderer
         contentCanvas.getConfig().setLoadImages(loadImages);
         contentCanvas.getConfig().setLoadBackgroundImages(loadBackgroundImages);
 
+        contentCanvas.setStripOutput(stripOutput);
+
         contentCanvas.createLayout(windowSize);
-        ImageIO.write(contentCanvas.getImage(), "png", out);
+        if (stripOutput)
+            contentCanvas.writePng(out);
+        else
+            ImageIO.write(contentCanvas.getImage(), "png", out);
         
         docSource.close();
 
@@ -0,0 +1,211 @@
+/*
+ * StreamingDOMSource.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 18:03:44 by agent
+ */
+package org.fit.cssbox.io;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.xerces.parsers.SAXParser;
+import org.codelibs.nekohtml.HTMLConfiguration;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A DOM source that is able to provide the document body incrementally. The document is parsed
+ * by the NekoHTML parser in the SAX mode and the DOM is built from the parser events. In the
+ * streaming mode (see {@link #parse(BlockHandler)}), each top-level child of the {@code <body>}
+ * element is passed to a handler as soon as it is complete and it is removed from the DOM
+ * afterwards. Therefore, the DOM only contains the document head and a single top-level block
+ * at any time.
+ *
+ * @author agent
+ */
+public class StreamingDOMSource extends DOMSource
+{
+
+    /**
+     * A handler that is notified about the parsed parts of the document.
+     */
+    public interface BlockHandler
+    {
+        /**
+         * Called when the document head has been parsed and the body starts. The DOM contains the
+         * complete {@code <head>} element and an empty {@code <body>} element.
+         * @param doc the document
+         * @throws IOException
+         */
+        public void headParsed(Document doc) throws IOException;
+
+        /**
+         * Called when a top-level child of the {@code <body>} element has been parsed. The body contains
+         * the complete child (and possibly some preceding text nodes). The contents of the body
+         * is removed when the method returns.
+         * @param doc the document
+         * @param body the document body
+         * @throws IOException
+         */
+        public void blockParsed(Document doc, Element body) throws IOException;
+    }
+
+    public StreamingDOMSource(DocumentSource src)
+    {
+        super(src);
+    }
+
+    /**
+     * Parses the whole document and returns the complete DOM.
+     */
+    @Override
+    public Document parse() throws SAXException, IOException
+    {
+        final DOMBuilder builder = new DOMBuilder(null);
+        runParser(builder);
+        return builder.doc;
+    }
+
+    /**
+     * Parses the document in the streaming mode. The handler is notified about the parsed head and all
+     * the top-level blocks of the body in the document order; the blocks are released after being processed.
+     * @param handler the handler to be notified
+     * @return the document containing the head and an empty body
+     * @throws SAXException
+     * @throws IOException when the parsing or the handler fails
+     */
+    public Document parse(BlockHandler handler) throws SAXException, IOException
+    {
+        final DOMBuilder builder = new DOMBuilder(handler);
+        try {
+            runParser(builder);
+        } catch (SAXException e) {
+            if (e.getException() instanceof IOException)
+                throw (IOException) e.getException(); //the handler failed
+            throw e;
+        }
+        return builder.doc;
+    }
+
+    private void runParser(DOMBuilder builder) throws SAXException, IOException
+    {
+        SAXParser parser = new SAXParser(new HTMLConfiguration());
+        parser.setProperty("http://cyberneko.org/html/properties/names/elems", "lower");
+        if (charset != null)
+            parser.setProperty("http://cyberneko.org/html/properties/default-encoding", charset);
+        parser.setContentHandler(builder);
+        parser.parse(new org.xml.sax.InputSource(getDocumentSource().getInputStream()));
+    }
+
+    //=========================================================================
+
+    /**
+     * Creates the DOM from the SAX events.
+     */
+    private static class DOMBuilder extends DefaultHandler
+    {
+        private final BlockHandler handler;
+        private final Document doc;
+        private final Deque<Node> stack;
+        private Element body;
+
+        public DOMBuilder(BlockHandler handler) throws SAXException
+        {
+            this.handler = handler;
+            try {
+                doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+            } catch (ParserConfigurationException e) {
+                throw new SAXException(e);
+            }
+            stack = new ArrayDeque<Node>();
+            stack.push(doc);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+        {
+            final Element el = doc.createElement(qName);
+            for (int i = 0; i < attributes.getLength(); i++)
+                el.setAttribute(attributes.getQName(i), attributes.getValue(i));
+            stack.peek().appendChild(el);
+            stack.push(el);
+            if (body == null && qName.equals("body"))
+            {
+                body = el;
+                if (handler != null)
+                {
+                    try {
+                        handler.headParsed(doc);
+                    } catch (IOException e) {
+                        throw new SAXException(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException
+        {
+            final Node el = stack.pop();
+            if (handler != null && body != null)
+            {
+                if (el.getParentNode() == body)
+                    flushBody(); //a top-level block is complete
+                else if (el == body && hasContent(body))
+                    flushBody(); //remaining text
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException
+        {
+            final Node parent = stack.peek();
+            if (parent != doc)
+                parent.appendChild(doc.createTextNode(new String(ch, start, length)));
+        }
+
+        private void flushBody() throws SAXException
+        {
+            try {
+                handler.blockParsed(doc, body);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+            while (body.getFirstChild() != null)
+                body.removeChild(body.getFirstChild());
+        }
+
+        private boolean hasContent(Element el)
+        {
+            for (Node child = el.getFirstChild(); child != null; child = child.getNextSibling())
+            {
+                if (child.getNodeType() != Node.TEXT_NODE || !child.getNodeValue().trim().isEmpty())
+                    return true;
+            }
+            return false;
+        }
+    }
+
+}
@@ -20,9 +20,13 @@
 
 package org.fit.cssbox.layout;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import cz.vutbr.web.css.CSSProperty;
 import cz.vutbr.web.css.CSSProperty.Clip;
@@ -155,6 +159,15 @@ public class BlockBox extends ElementBox
     
     /** Box-sizing property */
     protected CSSProperty.BoxSizing boxSizing;
+    
+    /** Page-break-before property */
+    protected CSSProperty.PageBreak pageBreakBefore;
+    
+    /** Page-break-after property */
+    protected CSSProperty.PageBreak pageBreakAfter;
+    
+    /** Page-break-inside property */
+    protected CSSProperty.PageBreakInside pageBreakInside;
         
     /** the left position should be set to static position during the layout */
     protected boolean leftstatic;
@@ -179,6 +192,19 @@ public class BlockBox extends ElementBox
     /** Clipping region specified using the clip: property (with absolute coordinates) */
     protected TermRect clipRegion;
     
+    /** Content width used for the last layout of the contents (-1 when not laid out yet) */
+    private float layoutWidth = -1;
+    
+    /** Resulting content height of the last layout of the contents */
+    private float layoutHeight;
+    
+    /** Float lists used for the last layout of the contents */
+    private FloatList layoutFleft;
+    private FloatList layoutFright;
+    
+    /** The layout pass where the last layout of the contents may be reused (-1 for none) */
+    private int reuseLayoutPass = -1;
+    
     //=====================================================================
     
     /** Creates a new instance of BlockBox */
@@ -270,6 +296,9 @@ public class BlockBox extends ElementBox
         overflowX = src.overflowX;
         overflowY = src.overflowY;
         boxSizing = src.boxSizing;
+        pageBreakBefore = src.pageBreakBefore;
+        pageBreakAfter = src.pageBreakAfter;
+        pageBreakInside = src.pageBreakInside;
         align = src.align;
         indent = src.indent;
         topstatic = src.topstatic;
@@ -293,6 +322,68 @@ public class BlockBox extends ElementBox
     {
         setFloats(new FloatList(this), new FloatList(this), 0, 0, 0);
     }
+    
+    @Override
+    protected void resetLayout()
+    {
+        setFloats(new FloatList(this), new FloatList(this), 0, 0, 0);
+        widthComputed = false;
+        reuseLayoutPass = -1;
+    }
+    
+    /**
+     * The previous layout of the contents may be reused when the box has an explicit absolute width that
+     * has not changed, it does not share the floats with the surrounding content, its height does not
+     * depend on the containing block and the subtree contains no positioned boxes.
+     */
+    @Override
+    protected boolean canReuseLayout()
+    {
+        if (layoutWidth >= 0 && content.width == layoutWidth
+                && hasIndependentLayout())
+        {
+            reuseLayoutPass = getLayoutPass() + 1; //the next layout pass
+            return true;
+        }
+        else
+            return false;
+    }
+    
+    /**
+     * Checks whether the layout of the box contents does not depend on the surrounding content during
+     * the current layout pass: the box has an explicit absolute width, it does not share the floats
+     * with the surrounding content, its height does not depend on the containing block and the subtree
+     * contains no positioned boxes (their containing blocks may be outside of the subtree).
+     * @return {@code true} when the contents may be laid out independently
+     */
+    protected boolean hasIndependentLayout()
+    {
+        return getClass() == BlockBox.class //subclasses may use their own layout
+                && displayed
+                && wset && !wrelative
+                && encloseFloats()
+                && !isPercentageLength("height") && !isPercentageLength("min-height") && !isPercentageLength("max-height")
+                && !containsPositioned(this);
+    }
+    
+    private boolean isPercentageLength(String name)
+    {
+        final TermLengthOrPercent len = getLengthValue(name);
+        return len != null && len.isPercentage();
+    }
+    
+    private static boolean containsPositioned(ElementBox root)
+    {
+        for (int i = 0; i < root.getSubBoxNumber(); i++)
+        {
+            final Box sub = root.getSubBox(i);
+            if (sub instanceof BlockBox && ((BlockBox) sub).isPositioned())
+                return true;
+            if (sub instanceof ElementBox && containsPositioned((ElementBox) sub))
+                return true;
+        }
+        return false;
+    }
 
     @Override
     public void addSubBox(Box box)
@@ -392,6 +483,53 @@ public class BlockBox extends ElementBox
         return overflowY.toString();
     }
     
+    public CSSProperty.PageBreak getPageBreakBefore()
+    {
+        return pageBreakBefore;
+    }
+    
+    public CSSProperty.PageBreak getPageBreakAfter()
+    {
+        return pageBreakAfter;
+    }
+    
+    public CSSProperty.PageBreakInside getPageBreakInside()
+    {
+        return pageBreakInside;
+    }
+    
+    /**
+     * Checks whether a page break is forced before the box.
+     * @return {@code true} when a page break is required before the box
+     */
+    public boolean forcesPageBreakBefore()
+    {
+        return isForcedPageBreak(pageBreakBefore);
+    }
+    
+    /**
+     * Checks whether a page break is forced after the box.
+     * @return {@code true} when a page break is required after the box
+     */
+    public boolean forcesPageBreakAfter()
+    {
+        return isForcedPageBreak(pageBreakAfter);
+    }
+    
+    /**
+     * Checks whether the page breaks inside of the box should be avoided.
+     * @return {@code true} when the page breaks should be avoided
+     */
+    public boolean avoidsPageBreakInside()
+    {
+        return pageBreakInside == CSSProperty.PageBreakInside.AVOID;
+    }
+    
+    private static boolean isForcedPageBreak(CSSProperty.PageBreak pb)
+    {
+        return pb == CSSProperty.PageBreak.ALWAYS || pb == CSSProperty.PageBreak.LEFT || pb == CSSProperty.PageBreak.RIGHT;
+    }
+    
     public float getFloatY()
     {
         return floatY;
@@ -809,6 +947,21 @@ public class BlockBox extends ElementBox
             bounds.setSize(0, 0);
             return true;
         }
+        
+        //the contents have not changed since the last layout, use its result
+        if (reuseLayoutPass == getLayoutPass() && content.width == layoutWidth)
+        {
+            setFloats(layoutFleft, layoutFright, floatXl, floatXr, floatY);
+            if (!hasFixedHeight())
+            {
+                setContentHeight(layoutHeight);
+                updateSizes();
+            }
+            widthComputed = true;
+            setAvailableWidth(totalWidth());
+            setSize(totalWidth(), totalHeight());
+            return true;
+        }
 
         //remove previously splitted children from possible previous layout
         clearSplitted();
@@ -817,8 +970,8 @@ public class BlockBox extends ElementBox
         if (!hasFixedWidth())
         {
             //float min = getMinimalContentWidthLimit();
-            float min = Math.max(getMinimalContentWidthLimit(), getMinimalContentWidth());
-            float max = getMaximalContentWidth();
+            float min = Math.max(getMinimalContentWidthLimit(), getMinimalContentWidthCached());
+            float max = getMaximalContentWidthCached();
             float availcont = availw - emargin.left - border.left - padding.left - emargin.right - border.right - padding.right;
             //float pref = Math.min(max, availcont);
             //if (pref < min) pref = min;
@@ -839,6 +992,12 @@ public class BlockBox extends ElementBox
         else //block elements containing block elements
             layoutBlocks();
         
+        //remember the result for a possible reuse
+        layoutWidth = content.width;
+        layoutHeight = content.height;
+        layoutFleft = fleft;
+        layoutFright = fright;
+        
         //allways fits as well possible
         return true;
     }
@@ -1060,6 +1219,7 @@ public class BlockBox extends ElementBox
     protected void layoutBlocks()
     {
         float wlimit = getAvailableContentWidth();
+        layoutIndependentBlocks(wlimit);
         BlockLayoutStatus stat = new BlockLayoutStatus();
         float mtop = 0; //current accumulated top margin
         float mbottom = 0; //current accumulated bottom marin
@@ -1185,6 +1345,94 @@ public class BlockBox extends ElementBox
         setSize(totalWidth(), totalHeight());
     }
 
+    /**
+     * Lays out the contents of the child boxes whose layout is independent on the surrounding content
+     * in parallel using the layout pool configured in {@link BrowserConfig#setLayoutPool(ForkJoinPool)}.
+     * The results are used later when the child boxes are placed by the sequential layout so that
+     * the resulting layout is the same as without the parallel layout.
+     * @param wlimit the width limit for placing the child boxes
+     */
+    protected void layoutIndependentBlocks(final float wlimit)
+    {
+        final ForkJoinPool pool = getLayoutPool();
+        if (pool != null)
+        {
+            final List<BlockBox> subboxes = new ArrayList<>();
+            for (int i = 0; i < getSubBoxNumber(); i++)
+            {
+                final Box sub = getSubBox(i);
+                if (sub instanceof BlockBox && ((BlockBox) sub).hasIndependentLayout())
+                    subboxes.add((BlockBox) sub);
+            }
+            if (subboxes.size() > 1)
+            {
+                final List<ForkJoinTask<?>> tasks = new ArrayList<>(subboxes.size());
+                for (final BlockBox subbox : subboxes)
+                {
+                    subbox.beginDetachedLayout();
+                    tasks.add(ForkJoinTask.adapt(new Runnable() {
+                        @Override
+                        public void run()
+                        {
+                            subbox.layoutIndependently(wlimit);
+                        }
+                    }));
+                }
+                try {
+                    runLayoutTasks(pool, tasks);
+                } finally {
+                    for (BlockBox subbox : subboxes)
+                        subbox.endDetachedLayout();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Obtains the pool configured for the parallel layout.
+     * @return the pool or {@code null} when the layout should be sequential
+     */
+    protected ForkJoinPool getLayoutPool()
+    {
+        final Viewport vp = getViewport();
+        return (vp == null || vp.getConfig() == null) ? null : vp.getConfig().getLayoutPool();
+    }
+    
+    /**
+     * Runs the layout tasks in the given pool and waits until all of them are finished. When already
+     * running in the same pool (a nested parallel layout), the tasks are forked in the current task.
+     * @param pool the pool to be used
+     * @param tasks the tasks to be run
+     */
+    protected static void runLayoutTasks(ForkJoinPool pool, final List<ForkJoinTask<?>> tasks)
+    {
+        if (ForkJoinTask.getPool() == pool)
+            ForkJoinTask.invokeAll(tasks);
+        else
+        {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected void compute()
+                {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Lays out the box contents in advance. The result is used by the subsequent {@link #doLayout(float, boolean, boolean)}
+     * during the current layout pass.
+     * @param wlimit the width limit used for the layout
+     */
+    private void layoutIndependently(float wlimit)
+    {
+        setFloats(new FloatList(this), new FloatList(this), 0, 0, 0);
+        doLayout(wlimit, true, true);
+        reuseLayoutPass = getLayoutPass();
+    }
+    
     protected void layoutBlockInFlow(BlockBox subbox, float wlimit, BlockLayoutStatus stat)
     {
         //new floating box limits
@@ -1530,7 +1778,7 @@ public class BlockBox extends ElementBox
             ret = content.width;
         //return the maximum of the nested minimal widths
         else
-            ret = getMinimalContentWidth();
+            ret = getMinimalContentWidthCached();
         //check against the maximal and minimal widths
         if (max_size.width != -1 && ret > max_size.width)
             ret = max_size.width;
@@ -1542,6 +1790,22 @@ public class BlockBox extends ElementBox
         return ret;
     }
 
+    /**
+     * Obtains the minimal width of the box content. The value computed by {@link #getMinimalContentWidth()}
+     * is cached until the box or its descendants change.
+     * @return the minimal content width
+     */
+    protected float getMinimalContentWidthCached()
+    {
+        float ret = getCachedMinimalWidth();
+        if (Float.isNaN(ret))
+        {
+            ret = getMinimalContentWidth();
+            setCachedMinimalWidth(ret);
+        }
+        return ret;
+    }
+    
     /**
      * Computes the minimal width of the box content from the contained sub-boxes.
      * @return the minimal content width
@@ -1610,7 +1874,7 @@ public class BlockBox extends ElementBox
         if (wset && !wrelative)
             ret = content.width;
         else
-            ret = getMaximalContentWidth();
+            ret = getMaximalContentWidthCached();
         //check against the maximal and minimal widths
         if (max_size.width != -1 && ret > max_size.width)
             ret = max_size.width;
@@ -1622,6 +1886,22 @@ public class BlockBox extends ElementBox
         return ret;
     }
 
+    /**
+     * Obtains the maximal width of the box content. The value computed by {@link #getMaximalContentWidth()}
+     * is cached until the box or its descendants change.
+     * @return the maximal content width
+     */
+    protected float getMaximalContentWidthCached()
+    {
+        float ret = getCachedMaximalWidth();
+        if (Float.isNaN(ret))
+        {
+            ret = getMaximalContentWidth();
+            setCachedMaximalWidth(ret);
+        }
+        return ret;
+    }
+    
     /**
      * Computes the maximal width of the box content from the contained sub-boxes.
      * @return the maximal content width
@@ -1895,6 +2175,13 @@ public class BlockBox extends ElementBox
         boxSizing = style.getProperty("box-sizing");
         if (boxSizing == null) boxSizing = CONTENT_BOX;
         
+        pageBreakBefore = style.getProperty("page-break-before");
+        if (pageBreakBefore == null) pageBreakBefore = CSSProperty.PageBreak.AUTO;
+        pageBreakAfter = style.getProperty("page-break-after");
+        if (pageBreakAfter == null) pageBreakAfter = CSSProperty.PageBreak.AUTO;
+        pageBreakInside = style.getProperty("page-break-inside");
+        if (pageBreakInside == null) pageBreakInside = CSSProperty.PageBreakInside.AUTO;
+        
         align = style.getProperty("text-align");
         if (align == null) align = ALIGN_LEFT;
         
@@ -1997,6 +2284,7 @@ public class BlockBox extends ElementBox
     protected void loadSizes()
     {
         loadSizes(false);
+        invalidateParentIntrinsicWidths();
     }
     
     @Override
@@ -2531,6 +2819,7 @@ public class BlockBox extends ElementBox
      */
     protected void clearSplitted()
     {
+        boolean removed = false;
         for (Iterator<Box> it = nested.iterator(); it.hasNext(); )
         {
             Box box = it.next();
@@ -2538,8 +2827,11 @@ public class BlockBox extends ElementBox
             {
                 it.remove();
                 endChild--;
+                removed = true;
             }
         }
+        if (removed)
+            invalidateIntrinsicWidths();
     }
     
 }
@@ -0,0 +1,250 @@
+/*
+ * BoundedImageCache.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:24:11 by agent
+ */
+package org.fit.cssbox.layout;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An implementation of the image cache with a limited total size of the decoded images.
+ * When the limit is exceeded, the least recently used images are evicted. The information about
+ * the failed images expires after a configurable time and the number of the failed entries is
+ * limited as well. The cache is thread-safe and it may be shared by concurrent renders using
+ * the same {@link BrowserConfig}.
+ *
+ * @author agent
+ */
+public class BoundedImageCache implements ImageCache
+{
+    /** Default maximal size of the cached images in bytes (64 MB) */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /** Default time to live of the failed image entries in milliseconds (5 minutes) */
+    public static final long DEFAULT_FAILED_TTL = 5L * 60 * 1000;
+
+    /** Maximal number of the stored failed image entries */
+    public static final int MAX_FAILED = 4096;
+
+    private final long maxBytes;
+    private final long failedTtl;
+
+    /** Cached images in the LRU order */
+    private final LinkedHashMap<String, Entry> cache;
+
+    /** Expiration times of the failed images in the insertion order */
+    private final LinkedHashMap<String, Long> failed;
+
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+
+    /**
+     * Creates a new cache with the default limits.
+     */
+    public BoundedImageCache()
+    {
+        this(DEFAULT_MAX_BYTES, DEFAULT_FAILED_TTL);
+    }
+
+    /**
+     * Creates a new cache with the given limits.
+     * @param maxBytes the maximal total size of the cached images in bytes
+     * @param failedTtl the time in milliseconds after which the failed images may be tried again
+     */
+    public BoundedImageCache(long maxBytes, long failedTtl)
+    {
+        this.maxBytes = maxBytes;
+        this.failedTtl = failedTtl;
+        cache = new LinkedHashMap<>(64, 0.75f, true);
+        failed = new LinkedHashMap<String, Long>(64, 0.75f, false) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+            {
+                return size() > MAX_FAILED;
+            }
+        };
+    }
+
+    @Override
+    public void put(URL uri, ContentImage image)
+    {
+        final long size = estimateSize(image);
+        if (size > maxBytes)
+            return; //too large to be cached at all
+        final String key = uri.toExternalForm();
+        synchronized (this)
+        {
+            final Entry prev = cache.put(key, new Entry(image, size));
+            if (prev != null)
+                currentBytes -= prev.size;
+            currentBytes += size;
+            failed.remove(key);
+            //evict the least recently used images
+            Iterator<Entry> it = cache.values().iterator();
+            while (currentBytes > maxBytes && it.hasNext())
+            {
+                final Entry eldest = it.next();
+                it.remove();
+                currentBytes -= eldest.size;
+                evictions++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized ContentImage get(URL uri)
+    {
+        final Entry entry = cache.get(uri.toExternalForm());
+        if (entry != null)
+        {
+            hits++;
+            return entry.image;
+        }
+        else
+        {
+            misses++;
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void putFailed(URL uri)
+    {
+        final String key = uri.toExternalForm();
+        failed.remove(key); //re-insert in order to keep the insertion order by expiration time
+        failed.put(key, System.currentTimeMillis() + failedTtl);
+    }
+
+    @Override
+    public synchronized boolean hasFailed(URL uri)
+    {
+        final String key = uri.toExternalForm();
+        final Long expires = failed.get(key);
+        if (expires == null)
+            return false;
+        else if (expires < System.currentTimeMillis())
+        {
+            failed.remove(key);
+            return false;
+        }
+        else
+            return true;
+    }
+
+    /**
+     * Removes all the cached images and failed image entries.
+     */
+    public synchronized void clear()
+    {
+        cache.clear();
+        failed.clear();
+        currentBytes = 0;
+    }
+
+    //=========================================================================
+
+    /**
+     * Obtains the maximal total size of the cached images.
+     * @return the size limit in bytes
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Obtains the current estimated size of all the cached images.
+     * @return the size in bytes
+     */
+    public synchronized long getCurrentBytes()
+    {
+        return currentBytes;
+    }
+
+    /**
+     * Obtains the number of the currently cached images.
+     * @return the number of images
+     */
+    public synchronized int getImageCount()
+    {
+        return cache.size();
+    }
+
+    /**
+     * Obtains the number of successful image lookups.
+     * @return the hit count
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Obtains the number of image lookups that did not find the image in the cache.
+     * @return the miss count
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    /**
+     * Obtains the number of images evicted from the cache because of the size limit.
+     * @return the eviction count
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictions;
+    }
+
+    /**
+     * Estimates the memory occupied by a decoded image. The default implementation assumes
+     * 4 bytes per pixel of the intrinsic image size. The subclasses may provide a more exact
+     * estimation for the particular image implementations.
+     * @param image the image
+     * @return the estimated size in bytes
+     */
+    protected long estimateSize(ContentImage image)
+    {
+        final long w = Math.max(1, (long) Math.ceil(image.getWidth()));
+        final long h = Math.max(1, (long) Math.ceil(image.getHeight()));
+        return w * h * 4;
+    }
+
+    //=========================================================================
+
+    private static class Entry
+    {
+        public final ContentImage image;
+        public final long size;
+
+        public Entry(ContentImage image, long size)
+        {
+            this.image = image;
+            this.size = size;
+        }
+    }
+
+}
@@ -169,6 +169,16 @@ abstract public class Box
         initBox(); //default implementation - just initialize this box
     }
     
+    /**
+     * Prepares the already initialized subtree for a new layout with different containing block sizes
+     * (e.g. after the viewport size has changed). Unlike {@link #initSubtree()}, the box tree organization
+     * is kept and only the values that depend on the containing boxes are computed again.
+     */
+    public void reinitSubtree()
+    {
+        //nothing to do by default
+    }
+    
     /**
      * Initializes a box in order to be a proper child box of the specified parent. Copies
      * all the necessary information from the parent.
@@ -100,6 +100,8 @@ public class BoxFactory
     protected int next_order;
     protected boolean overflowPropagated;
     
+    protected ImagePrefetcher imagePrefetcher;
+    
     
     /**
      * Create a new factory.
@@ -176,6 +178,24 @@ public class BoxFactory
         return decoder;
     }
     
+    /**
+     * Obtains the image prefetcher that provides the images loaded in advance.
+     * @return the prefetcher or {@code null} when no images have been prefetched
+     */
+    public ImagePrefetcher getImagePrefetcher()
+    {
+        return imagePrefetcher;
+    }
+
+    /**
+     * Sets the image prefetcher that provides the images loaded in advance.
+     * @param imagePrefetcher the prefetcher or {@code null} for loading the images synchronously
+     */
+    public void setImagePrefetcher(ImagePrefetcher imagePrefetcher)
+    {
+        this.imagePrefetcher = imagePrefetcher;
+    }
+    
     /**
      * Reset the factory for creating a new tree.
      */
@@ -524,7 +544,9 @@ public class BoxFactory
     private TextBox createTextBox(Text n, BoxTreeCreationStatus stat)
     {
         //TODO: in some whitespace processing modes, multiple boxes may be created
-        TextBox text = new TextBox(n, stat.parent.getVisualContext().create());
+        //the text boxes never modify their context, the shared context of the parent may be used directly
+        final VisualContext pctx = stat.parent.getVisualContext();
+        TextBox text = new TextBox(n, pctx.isShared() ? pctx : pctx.create());
         text.setOrder(next_order++);
         text.setContainingBlockBox(stat.contbox);
         text.setClipBlock(stat.clipbox);
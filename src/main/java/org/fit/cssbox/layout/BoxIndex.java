@@ -0,0 +1,417 @@
+/*
+ * BoxIndex.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:33:44 by agent
+ */
+package org.fit.cssbox.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import cz.vutbr.web.css.CSSProperty;
+
+/**
+ * A spatial index over the absolute bounds of all the boxes of a viewport. The boxes are stored
+ * in a uniform grid; the boxes that span too many grid cells are kept in a separate list.
+ * Apart from the box lookup, the index provides the painting extent of each subtree (the area
+ * that may be affected by painting the box and all its descendants) that is used for skipping
+ * the invisible subtrees when only a part of the viewport is drawn. For the boxes with many
+ * child boxes, the children are additionally indexed by the vertical extents of their subtrees
+ * so that the children visible in the drawn area are found without checking all of them.
+ *
+ * The index reflects the absolute positions at the time it has been created. It must be created
+ * again when the positions change; {@link Viewport#getBoxIndex()} takes care of that.
+ *
+ * @author agent
+ */
+public class BoxIndex
+{
+    /** Default grid cell size in pixels */
+    public static final int DEFAULT_CELL_SIZE = 256;
+
+    /** Maximal number of grid cells a box may be stored in; larger boxes are stored separately */
+    private static final int MAX_CELLS = 16;
+
+    /** Minimal number of child boxes of a box for indexing its children */
+    private static final int MIN_INDEXED_CHILDREN = 32;
+
+    /** Extra space around the boxes for the parts painted outside of their bounds (e.g. rounded strokes) */
+    private static final float BOX_MARGIN = 2;
+
+    private static final float INF = Float.POSITIVE_INFINITY;
+
+    private final int cellSize;
+    private final IdentityHashMap<Box, Integer> order;
+    private final IdentityHashMap<Box, float[]> extents;
+    private final IdentityHashMap<ElementBox, ChildIndex> childIndices;
+    private final List<Box> large;
+    private List<Box>[] cells;
+    private int gridX;
+    private int gridY;
+    private int cols;
+    private int rows;
+
+
+    /**
+     * Creates the index for the given viewport using the default cell size.
+     * @param viewport the viewport with the absolute positions already computed
+     */
+    public BoxIndex(Viewport viewport)
+    {
+        this(viewport, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Creates the index for the given viewport.
+     * @param viewport the viewport with the absolute positions already computed
+     * @param cellSize the grid cell size in pixels
+     */
+    public BoxIndex(Viewport viewport, int cellSize)
+    {
+        this.cellSize = cellSize;
+        order = new IdentityHashMap<>();
+        extents = new IdentityHashMap<>();
+        childIndices = new IdentityHashMap<>();
+        large = new ArrayList<>();
+        final List<Box> boxes = new ArrayList<>();
+        collectBoxes(viewport, boxes);
+        createGrid(boxes);
+    }
+
+    /**
+     * Obtains the number of indexed boxes.
+     * @return the box count
+     */
+    public int getBoxCount()
+    {
+        return order.size();
+    }
+
+    /**
+     * Finds all the boxes whose absolute bounds contain the given point.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the list of boxes in the box tree order (the ancestors precede their descendants)
+     */
+    public List<Box> boxesAt(float x, float y)
+    {
+        final List<Box> ret = new ArrayList<>();
+        final int col = (int) Math.floor(x / cellSize) - gridX;
+        final int row = (int) Math.floor(y / cellSize) - gridY;
+        if (col >= 0 && col < cols && row >= 0 && row < rows)
+        {
+            final List<Box> cell = cells[row * cols + col];
+            if (cell != null)
+            {
+                for (Box box : cell)
+                    if (box.getAbsoluteBounds().contains(x, y))
+                        ret.add(box);
+            }
+        }
+        for (Box box : large)
+            if (box.getAbsoluteBounds().contains(x, y))
+                ret.add(box);
+        sortByOrder(ret);
+        return ret;
+    }
+
+    /**
+     * Finds all the boxes whose absolute bounds intersect the given rectangle.
+     * @param rect the rectangle
+     * @return the list of boxes in the box tree order (the ancestors precede their descendants)
+     */
+    public List<Box> boxesIn(Rectangle rect)
+    {
+        final List<Box> ret = new ArrayList<>();
+        final int c1 = Math.max(0, (int) Math.floor(rect.x / cellSize) - gridX);
+        final int r1 = Math.max(0, (int) Math.floor(rect.y / cellSize) - gridY);
+        final int c2 = Math.min(cols - 1, (int) Math.floor((rect.x + rect.width) / cellSize) - gridX);
+        final int r2 = Math.min(rows - 1, (int) Math.floor((rect.y + rect.height) / cellSize) - gridY);
+        final IdentityHashMap<Box, Boolean> found = new IdentityHashMap<>();
+        for (int r = r1; r <= r2; r++)
+        {
+            for (int c = c1; c <= c2; c++)
+            {
+                final List<Box> cell = cells[r * cols + c];
+                if (cell != null)
+                {
+                    for (Box box : cell)
+                    {
+                        if (!found.containsKey(box) && box.getAbsoluteBounds().intersects(rect))
+                        {
+                            found.put(box, Boolean.TRUE);
+                            ret.add(box);
+                        }
+                    }
+                }
+            }
+        }
+        for (Box box : large)
+            if (box.getAbsoluteBounds().intersects(rect))
+                ret.add(box);
+        sortByOrder(ret);
+        return ret;
+    }
+
+    /**
+     * Checks whether painting the given box and its descendants may affect the given area.
+     * @param box the box to check
+     * @param area the painted area
+     * @return {@code true} when the subtree may be visible in the area or when the box is not
+     * known to the index.
+     */
+    public boolean mayPaintIn(Box box, Rectangle area)
+    {
+        final float[] ext = extents.get(box);
+        if (ext == null)
+            return true;
+        return ext[0] < area.x + area.width && ext[2] > area.x
+                && ext[1] < area.y + area.height && ext[3] > area.y;
+    }
+
+    /**
+     * Finds the child boxes of the given box whose painting may affect the given area
+     * (see {@link #mayPaintIn(Box, Rectangle)}).
+     * @param parent the parent box
+     * @param first the index of the first child box to be considered
+     * @param last the index of the last child box to be considered (not included)
+     * @param area the painted area
+     * @return the list of the child boxes in the child order
+     */
+    public List<Box> childrenIn(ElementBox parent, int first, int last, Rectangle area)
+    {
+        final List<Box> ret = new ArrayList<>();
+        final ChildIndex ci = childIndices.get(parent);
+        if (ci == null)
+        {
+            for (int i = first; i < last; i++)
+            {
+                final Box sub = parent.getSubBox(i);
+                if (mayPaintIn(sub, area))
+                    ret.add(sub);
+            }
+        }
+        else
+        {
+            //the candidates start above the area bottom; the children before lo all end above the area top
+            final int hi = ci.firstTopFrom(area.y + area.height);
+            final int lo = ci.firstBottomAbove(area.y);
+            final int[] found = new int[Math.max(0, hi - lo)];
+            int cnt = 0;
+            for (int k = lo; k < hi; k++)
+            {
+                final int pos = ci.positions[k];
+                if (pos >= first && pos < last && mayPaintIn(parent.getSubBox(pos), area))
+                    found[cnt++] = pos;
+            }
+            Arrays.sort(found, 0, cnt);
+            for (int k = 0; k < cnt; k++)
+                ret.add(parent.getSubBox(found[k]));
+        }
+        return ret;
+    }
+
+    //=========================================================================
+
+    /**
+     * Traverses the subtree, assigns the order to the boxes and computes the subtree painting extents.
+     * @return the extent of the subtree
+     */
+    private float[] collectBoxes(Box box, List<Box> boxes)
+    {
+        order.put(box, boxes.size());
+        boxes.add(box);
+        final Rectangle b = box.getAbsoluteBounds();
+        if (b == null)
+        {
+            //not positioned, nothing is known about the subtree
+            final float[] ext = new float[] {-INF, -INF, INF, INF};
+            extents.put(box, ext);
+            return ext;
+        }
+        float margin = BOX_MARGIN;
+        if (box instanceof TextBox)
+            margin += 2 * box.getVisualContext().getEm(); //the glyphs may exceed the line box
+        final float[] ext = new float[] {b.x - margin, b.y - margin, b.x + b.width + margin, b.y + b.height + margin};
+        if (box instanceof ElementBox)
+        {
+            final ElementBox el = (ElementBox) box;
+            if (el instanceof ListItemBox)
+                ext[0] = -INF; //the marker is painted outside of the box
+            if (el.getStyle() != null && el.getStyle().getProperty("transform") == CSSProperty.Transform.list_values)
+            {
+                ext[0] = ext[1] = -INF; //transformed contents may be painted anywhere
+                ext[2] = ext[3] = INF;
+            }
+            final int n = el.getSubBoxNumber();
+            final float[][] subext = (n >= MIN_INDEXED_CHILDREN) ? new float[n][] : null;
+            for (int i = 0; i < n; i++)
+            {
+                final float[] sub = collectBoxes(el.getSubBox(i), boxes);
+                ext[0] = Math.min(ext[0], sub[0]);
+                ext[1] = Math.min(ext[1], sub[1]);
+                ext[2] = Math.max(ext[2], sub[2]);
+                ext[3] = Math.max(ext[3], sub[3]);
+                if (subext != null)
+                    subext[i] = sub;
+            }
+            if (subext != null)
+                childIndices.put(el, new ChildIndex(subext));
+        }
+        extents.put(box, ext);
+        return ext;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void createGrid(List<Box> boxes)
+    {
+        //grid bounds
+        float x1 = 0, y1 = 0, x2 = 0, y2 = 0;
+        for (Box box : boxes)
+        {
+            final Rectangle b = box.getAbsoluteBounds();
+            if (b == null)
+                continue;
+            x1 = Math.min(x1, b.x);
+            y1 = Math.min(y1, b.y);
+            x2 = Math.max(x2, b.x + b.width);
+            y2 = Math.max(y2, b.y + b.height);
+        }
+        gridX = (int) Math.floor(x1 / cellSize);
+        gridY = (int) Math.floor(y1 / cellSize);
+        cols = (int) Math.floor(x2 / cellSize) - gridX + 1;
+        rows = (int) Math.floor(y2 / cellSize) - gridY + 1;
+        cells = new List[cols * rows];
+        //insert the boxes
+        for (Box box : boxes)
+        {
+            final Rectangle b = box.getAbsoluteBounds();
+            if (b == null)
+                continue;
+            final int c1 = (int) Math.floor(b.x / cellSize) - gridX;
+            final int r1 = (int) Math.floor(b.y / cellSize) - gridY;
+            final int c2 = (int) Math.floor((b.x + b.width) / cellSize) - gridX;
+            final int r2 = (int) Math.floor((b.y + b.height) / cellSize) - gridY;
+            if ((c2 - c1 + 1) * (r2 - r1 + 1) > MAX_CELLS)
+                large.add(box);
+            else
+            {
+                for (int r = r1; r <= r2; r++)
+                {
+                    for (int c = c1; c <= c2; c++)
+                    {
+                        List<Box> cell = cells[r * cols + c];
+                        if (cell == null)
+                        {
+                            cell = new ArrayList<>();
+                            cells[r * cols + c] = cell;
+                        }
+                        cell.add(box);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The child boxes of a box sorted by the tops of their subtree extents.
+     */
+    private static class ChildIndex
+    {
+        /** The child box indices sorted by the tops */
+        public final int[] positions;
+        /** The extent tops in the ascending order */
+        public final float[] tops;
+        /** The maximal extent bottom of the children up to the given index (non-decreasing) */
+        public final float[] maxBottoms;
+
+        public ChildIndex(final float[][] subext)
+        {
+            final Integer[] sorted = new Integer[subext.length];
+            for (int i = 0; i < sorted.length; i++)
+                sorted[i] = i;
+            Arrays.sort(sorted, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2)
+                {
+                    return Float.compare(subext[o1][1], subext[o2][1]);
+                }
+            });
+            positions = new int[sorted.length];
+            tops = new float[sorted.length];
+            maxBottoms = new float[sorted.length];
+            float max = Float.NEGATIVE_INFINITY;
+            for (int k = 0; k < sorted.length; k++)
+            {
+                positions[k] = sorted[k];
+                tops[k] = subext[sorted[k]][1];
+                max = Math.max(max, subext[sorted[k]][3]);
+                maxBottoms[k] = max;
+            }
+        }
+
+        /**
+         * Finds the first child whose top is not above the given coordinate.
+         */
+        public int firstTopFrom(float y)
+        {
+            int lo = 0, hi = tops.length;
+            while (lo < hi)
+            {
+                final int mid = (lo + hi) >>> 1;
+                if (tops[mid] < y)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * Finds the first child such that some of the children up to it ends below the given coordinate.
+         */
+        public int firstBottomAbove(float y)
+        {
+            int lo = 0, hi = maxBottoms.length;
+            while (lo < hi)
+            {
+                final int mid = (lo + hi) >>> 1;
+                if (maxBottoms[mid] <= y)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private void sortByOrder(List<Box> boxes)
+    {
+        Collections.sort(boxes, new Comparator<Box>() {
+            @Override
+            public int compare(Box o1, Box o2)
+            {
+                return Integer.compare(order.get(o1), order.get(o2));
+            }
+        });
+    }
+
+}
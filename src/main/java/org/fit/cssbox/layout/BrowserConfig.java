@@ -27,7 +27,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
+import org.fit.cssbox.css.StyleSheetCache;
 import org.fit.cssbox.io.ContentObserver;
 import org.fit.cssbox.io.DOMSource;
 import org.fit.cssbox.io.DefaultDOMSource;
@@ -68,6 +71,30 @@ public class BrowserConfig
     /** Image loading timeout [ms] */
     private int imageLoadTimeout;
     
+    /** Should we prefetch the images concurrently before creating the boxes? */
+    private boolean prefetchImages;
+    
+    /** Total image prefetching timeout [ms] */
+    private int imagePrefetchTimeout;
+    
+    /** Executor used for prefetching the images or {@code null} for the default one */
+    private ExecutorService imagePrefetchExecutor;
+    
+    /** Should we prefetch the used CSS fonts concurrently before creating the boxes? */
+    private boolean prefetchFonts;
+    
+    /** Total font prefetching timeout [ms] */
+    private int fontPrefetchTimeout;
+    
+    /** The pool used for the parallel layout or {@code null} for the sequential layout */
+    private ForkJoinPool layoutPool;
+    
+    /** Minimal number of rows of a table that forces the fixed table layout (0 for never) */
+    private int fixedTableLayoutRows;
+    
+    /** Should the image pixels be decoded only when drawn and subsampled to the used size? */
+    private boolean subsampleImages;
+    
     /** Should we interpret HTML tags? */
     private boolean useHTML;
     
@@ -88,6 +115,15 @@ public class BrowserConfig
 
     private ImageCache imageCache;
     
+    /** The cache of the parsed external style sheets */
+    private StyleSheetCache styleSheetCache;
+    
+    /** Should the text widths be always measured exactly without caching? */
+    private boolean exactTextMeasurement;
+    
+    /** The text run width cache shared by the visual contexts */
+    private StringWidthCache stringWidthCache;
+    
     /** Logical font mapping */
     private Map<String, List<String>> logicalFonts;
     
@@ -101,12 +137,19 @@ public class BrowserConfig
         loadBackgroundImages = true;
         loadFonts = true;
         imageLoadTimeout = 500;
+        prefetchImages = false;
+        imagePrefetchTimeout = 5000;
+        prefetchFonts = false;
+        fontPrefetchTimeout = 5000;
+        subsampleImages = false;
+        fixedTableLayoutRows = 0;
         useHTML = true;
         replaceImagesWithAlt = false;
         clipViewport = false;
         documentSourceClass = DefaultDocumentSource.class;
         domSourceClass = DefaultDOMSource.class;
         contentObserver = null;
+        exactTextMeasurement = false;
         logicalFonts = getDefaultLogicalFonts();
     }
 
@@ -182,6 +225,140 @@ public class BrowserConfig
         this.imageLoadTimeout = imageLoadTimeout;
     }
 
+    public boolean getPrefetchImages()
+    {
+        return prefetchImages;
+    }
+
+    /**
+     * Configures whether the images should be loaded concurrently in advance before the box tree
+     * is created. When enabled, the loading of each image is limited by the image load timeout
+     * (see {@link #setImageLoadTimeout(int)}) and the whole prefetching is limited by the image
+     * prefetch timeout (see {@link #setImagePrefetchTimeout(int)}). The images that are not loaded
+     * in time are treated as failed. The default value is {@code false}.
+     * @param prefetchImages {@code true} for enabling the image prefetching
+     */
+    public void setPrefetchImages(boolean prefetchImages)
+    {
+        this.prefetchImages = prefetchImages;
+    }
+
+    public int getImagePrefetchTimeout()
+    {
+        return imagePrefetchTimeout;
+    }
+
+    /**
+     * Configures the total timeout for prefetching all the images of a page. The default value is 5000ms.
+     * @param imagePrefetchTimeout The timeout in miliseconds.
+     */
+    public void setImagePrefetchTimeout(int imagePrefetchTimeout)
+    {
+        this.imagePrefetchTimeout = imagePrefetchTimeout;
+    }
+
+    public ExecutorService getImagePrefetchExecutor()
+    {
+        return imagePrefetchExecutor;
+    }
+
+    /**
+     * Sets the executor used for prefetching the images. When no executor is set (default),
+     * a new thread pool is created for each layout and released after the box tree is created.
+     * @param imagePrefetchExecutor the executor to be used or {@code null} for the default one
+     */
+    public void setImagePrefetchExecutor(ExecutorService imagePrefetchExecutor)
+    {
+        this.imagePrefetchExecutor = imagePrefetchExecutor;
+    }
+
+    public boolean getPrefetchFonts()
+    {
+        return prefetchFonts;
+    }
+
+    /**
+     * Configures whether the CSS fonts used by the document should be loaded concurrently in advance
+     * before the box tree is created. Only the fonts required by the computed element styles are loaded;
+     * the prefetching is limited by the font prefetch timeout (see {@link #setFontPrefetchTimeout(int)}).
+     * The fonts that are not loaded in time are loaded later when needed. The option has no effect
+     * when the fonts are not loaded (see {@link #setLoadFonts(boolean)}). The default value is {@code false}.
+     * @param prefetchFonts {@code true} for enabling the font prefetching
+     */
+    public void setPrefetchFonts(boolean prefetchFonts)
+    {
+        this.prefetchFonts = prefetchFonts;
+    }
+
+    public int getFontPrefetchTimeout()
+    {
+        return fontPrefetchTimeout;
+    }
+
+    /**
+     * Configures the total timeout for prefetching the fonts of a page. The default value is 5000ms.
+     * @param fontPrefetchTimeout The timeout in miliseconds.
+     */
+    public void setFontPrefetchTimeout(int fontPrefetchTimeout)
+    {
+        this.fontPrefetchTimeout = fontPrefetchTimeout;
+    }
+
+    public ForkJoinPool getLayoutPool()
+    {
+        return layoutPool;
+    }
+
+    /**
+     * Enables the parallel layout. When a pool is set, the block boxes with an explicit width that establish
+     * a new block formatting context (and therefore their contents do not depend on the surrounding boxes)
+     * and the table cells are laid out in parallel using the given pool. The resulting layout is the same as
+     * the sequential one.
+     * By default, no pool is used and the layout is sequential.
+     * @param layoutPool the pool to be used (e.g. {@link ForkJoinPool#commonPool()}) or {@code null} for the sequential layout
+     */
+    public void setLayoutPool(ForkJoinPool layoutPool)
+    {
+        this.layoutPool = layoutPool;
+    }
+
+    public int getFixedTableLayoutRows()
+    {
+        return fixedTableLayoutRows;
+    }
+
+    /**
+     * Forces the fixed table layout algorithm (as for {@code table-layout: fixed}) for large tables.
+     * The column widths of such tables are computed from the columns and the first row only and the
+     * remaining rows are not analyzed before their layout. This is much faster for large data tables;
+     * however, the column widths may not fit the contents of the remaining cells.
+     * By default, the fixed layout is used only when specified by the style.
+     * @param fixedTableLayoutRows the minimal number of table rows that forces the fixed layout
+     * or 0 for never forcing the fixed layout
+     */
+    public void setFixedTableLayoutRows(int fixedTableLayoutRows)
+    {
+        this.fixedTableLayoutRows = fixedTableLayoutRows;
+    }
+
+    public boolean getSubsampleImages()
+    {
+        return subsampleImages;
+    }
+
+    /**
+     * Configures whether the bitmap images should be decoded lazily. When enabled, only the image header
+     * is read when the image is loaded in order to obtain the intrinsic image size for the layout. The pixels
+     * are decoded when the image is drawn and they are subsampled according to the used size of the box
+     * so that large images displayed in small boxes do not need to be decoded at full resolution.
+     * The default value is {@code false}.
+     * @param subsampleImages {@code true} for enabling the lazy subsampled image decoding
+     */
+    public void setSubsampleImages(boolean subsampleImages)
+    {
+        this.subsampleImages = subsampleImages;
+    }
+
     /**
      * Registers the content observer that tracks the image loading.
      * @param contentObserver the content observer to be used or {@code null} for none.
@@ -201,10 +378,73 @@ public class BrowserConfig
         return imageCache;
     }
 
+    /**
+     * Sets the cache used for storing the loaded images. By default, no cache is used. 
+     * The {@link BoundedImageCache} is a good choice for long-running applications since it limits
+     * the total size of the cached images; the {@link UnlimitedImageCache} keeps all the images forever.
+     * @param imageCache the image cache to be used or {@code null} for no caching
+     */
     public void setImageCache(ImageCache imageCache) {
         this.imageCache = imageCache;
     }
 
+    public StyleSheetCache getStyleSheetCache()
+    {
+        return styleSheetCache;
+    }
+
+    /**
+     * Sets the cache used for storing the parsed external style sheets. By default, no cache is used.
+     * The cache is used by the analyzers created by the library (for the embedded documents and by the
+     * {@link org.fit.cssbox.awt.StreamingRenderer} and {@link org.fit.cssbox.awt.BatchRenderer}); the analyzers created
+     * by the application obtain it using {@link org.fit.cssbox.css.DOMAnalyzer#setStyleSheetCache(StyleSheetCache)};
+     * the {@link org.fit.cssbox.css.BoundedStyleSheetCache} is a good choice for crawling many documents that share the same style sheets.
+     * @param styleSheetCache the style sheet cache to be used or {@code null} for no caching
+     */
+    public void setStyleSheetCache(StyleSheetCache styleSheetCache)
+    {
+        this.styleSheetCache = styleSheetCache;
+    }
+
+    public boolean getExactTextMeasurement()
+    {
+        return exactTextMeasurement;
+    }
+
+    /**
+     * Configures whether the text widths should be always measured exactly by the underlying
+     * toolkit. When set to {@code false} (default), the visual contexts may use the cached
+     * text run widths and the pre-computed character advances.
+     * @param exactTextMeasurement {@code true} for switching the text measurement cache off
+     */
+    public void setExactTextMeasurement(boolean exactTextMeasurement)
+    {
+        this.exactTextMeasurement = exactTextMeasurement;
+    }
+
+    /**
+     * Obtains the text run width cache used by the visual contexts.
+     * @return the cache or {@code null} when the exact text measurement is configured
+     */
+    public synchronized StringWidthCache getStringWidthCache()
+    {
+        if (exactTextMeasurement)
+            return null;
+        if (stringWidthCache == null)
+            stringWidthCache = new StringWidthCache();
+        return stringWidthCache;
+    }
+
+    /**
+     * Sets a custom text run width cache. This may be used for sharing the cache among several
+     * configurations or for changing the cache size.
+     * @param stringWidthCache the new cache
+     */
+    public synchronized void setStringWidthCache(StringWidthCache stringWidthCache)
+    {
+        this.stringWidthCache = stringWidthCache;
+    }
+
     public boolean getUseHTML()
     {
         return useHTML;
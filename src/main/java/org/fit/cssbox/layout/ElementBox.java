@@ -197,6 +197,23 @@ abstract public class ElementBox extends Box
     /** Corresponding stacking context if this box creates one. */
     protected StackingContext scontext;
     
+    //============================== Intrinsic widths ======================
+    
+    /** Cached minimal width computed from the child boxes (NaN when not known) */
+    private float cachedMinimalWidth = Float.NaN;
+    
+    /** Cached maximal width computed from the child boxes (NaN when not known) */
+    private float cachedMaximalWidth = Float.NaN;
+    
+    /** The layout pass the cached widths belong to */
+    private int cachedWidthsPass = -1;
+    
+    /** The box is being laid out by a parallel layout task; the invalidation does not continue to the ancestors */
+    private boolean detachedLayout;
+    
+    /** The cached widths have been invalidated during the detached layout */
+    private boolean detachedInvalidation;
+    
     //=======================================================================
     
     /**
@@ -290,6 +307,41 @@ abstract public class ElementBox extends Box
         computeEfficientMargins();
     }
     
+    @Override
+    public void reinitSubtree()
+    {
+        resetLayout();
+        loadSizes();
+        
+        if (!canReuseLayout())
+        {
+            for (int i = 0; i < getSubBoxNumber(); i++)
+                getSubBox(i).reinitSubtree();
+        }
+        
+        computeEfficientMargins();
+    }
+    
+    /**
+     * Resets the layout state of the box before a new layout of an already initialized box tree.
+     * The default implementation does nothing.
+     */
+    protected void resetLayout()
+    {
+    }
+    
+    /**
+     * Checks whether the result of the previous layout of the box contents may be used for the
+     * next layout without laying out the subtree again. This is called from {@link #reinitSubtree()}
+     * after the box sizes have been loaded again; when it returns {@code true}, the subtree is
+     * left untouched.
+     * @return {@code true} when the previous layout of the contents may be used
+     */
+    protected boolean canReuseLayout()
+    {
+        return false;
+    }
+    
     //=======================================================================
     
     /**
@@ -319,6 +371,7 @@ abstract public class ElementBox extends Box
     {
     	style = s;
     	loadBasicStyle();
+    	invalidateIntrinsicWidths();
     }
     
     /**
@@ -544,6 +597,7 @@ abstract public class ElementBox extends Box
         //collapse initiall white spaces when necessary
         if (last != null && last.collapsesSpaces() && last.endsWithWhitespace())
             box.setIgnoreInitialWhitespace(true);
+        invalidateIntrinsicWidths();
     }
     
     /**
@@ -553,7 +607,10 @@ abstract public class ElementBox extends Box
     public void removeSubBox(Box box)
     {
         if (nested.remove(box))
+        {
             endChild--;
+            invalidateIntrinsicWidths();
+        }
     }
     
     /**
@@ -563,6 +620,7 @@ abstract public class ElementBox extends Box
     {
         nested.removeAllElements();
         endChild = 0;
+        invalidateIntrinsicWidths();
     }
     
     /**
@@ -575,6 +633,7 @@ abstract public class ElementBox extends Box
         int pos = nested.indexOf(where);
         nested.insertElementAt(what, pos);
         endChild++;
+        invalidateIntrinsicWidths();
     }
 
     /**
@@ -587,6 +646,7 @@ abstract public class ElementBox extends Box
         int pos = nested.indexOf(where);
         nested.insertElementAt(what, pos+1);
         endChild++;
+        invalidateIntrinsicWidths();
     }
 
     /**
@@ -598,6 +658,7 @@ abstract public class ElementBox extends Box
     {
         nested.insertElementAt(what, index);
         endChild++;
+        invalidateIntrinsicWidths();
     }
     
     /**
@@ -760,6 +821,7 @@ abstract public class ElementBox extends Box
     public void setStartChild(int index)
     {
         startChild = index;
+        invalidateIntrinsicWidths();
     }
     
     /**
@@ -776,6 +838,139 @@ abstract public class ElementBox extends Box
     public void setEndChild(int index)
     {
         endChild = index;
+        invalidateIntrinsicWidths();
+    }
+    
+    //=======================================================================
+    
+    /**
+     * Obtains the minimal width computed from the child boxes that has been cached during
+     * the current layout pass.
+     * @return the cached width or {@code NaN} when the width is not cached
+     */
+    protected float getCachedMinimalWidth()
+    {
+        return (cachedWidthsPass == getLayoutPass()) ? cachedMinimalWidth : Float.NaN;
+    }
+    
+    /**
+     * Stores the minimal width computed from the child boxes for the current layout pass.
+     * @param width the computed width
+     */
+    protected void setCachedMinimalWidth(float width)
+    {
+        updateCachedWidthsPass();
+        cachedMinimalWidth = width;
+    }
+    
+    /**
+     * Obtains the maximal width computed from the child boxes that has been cached during
+     * the current layout pass.
+     * @return the cached width or {@code NaN} when the width is not cached
+     */
+    protected float getCachedMaximalWidth()
+    {
+        return (cachedWidthsPass == getLayoutPass()) ? cachedMaximalWidth : Float.NaN;
+    }
+    
+    /**
+     * Stores the maximal width computed from the child boxes for the current layout pass.
+     * @param width the computed width
+     */
+    protected void setCachedMaximalWidth(float width)
+    {
+        updateCachedWidthsPass();
+        cachedMaximalWidth = width;
+    }
+    
+    /**
+     * Discards the cached intrinsic widths of this box and its ancestors. This should be called
+     * whenever the box tree or the style changes in a way that influences the minimal or maximal
+     * width of the box. The ancestors are not visited above the first box whose cache has been
+     * already discarded during the current layout pass: its ancestors have been discarded
+     * at the same time and none of them has used the box since then.
+     */
+    public void invalidateIntrinsicWidths()
+    {
+        final int pass = getLayoutPass();
+        ElementBox box = this;
+        while (box != null && !box.isIntrinsicWidthsCleared(pass))
+        {
+            box.cachedMinimalWidth = Float.NaN;
+            box.cachedMaximalWidth = Float.NaN;
+            if (box.detachedLayout)
+            {
+                box.detachedInvalidation = true; //propagated by endDetachedLayout()
+                break;
+            }
+            box = box.getParent();
+        }
+    }
+    
+    /**
+     * Marks the box as being laid out by a parallel layout task. Until {@link #endDetachedLayout()}
+     * is called, the invalidation of the intrinsic widths within the subtree does not continue to
+     * the ancestors that are shared with the other tasks. This must be called before the task is started.
+     */
+    protected void beginDetachedLayout()
+    {
+        detachedLayout = true;
+        detachedInvalidation = false;
+    }
+    
+    /**
+     * Finishes the parallel layout of the box and invalidates the intrinsic widths of the ancestors
+     * when the subtree has been changed during the layout. This must be called after the task
+     * has finished, outside of the parallel section.
+     */
+    protected void endDetachedLayout()
+    {
+        detachedLayout = false;
+        if (detachedInvalidation)
+        {
+            detachedInvalidation = false;
+            invalidateParentIntrinsicWidths();
+        }
+    }
+    
+    /**
+     * Discards the cached intrinsic widths of the ancestors of this box. This should be called
+     * whenever the sizes of the box itself (margins, borders, padding, width) change.
+     */
+    protected void invalidateParentIntrinsicWidths()
+    {
+        if (getParent() != null)
+            getParent().invalidateIntrinsicWidths();
+    }
+    
+    /**
+     * Checks whether the cached widths have been computed and discarded again during the given pass.
+     * The boxes that do not use the cache are never considered to be cleared.
+     */
+    private boolean isIntrinsicWidthsCleared(int pass)
+    {
+        return cachedWidthsPass == pass && Float.isNaN(cachedMinimalWidth) && Float.isNaN(cachedMaximalWidth);
+    }
+    
+    private void updateCachedWidthsPass()
+    {
+        final int pass = getLayoutPass();
+        if (cachedWidthsPass != pass)
+        {
+            cachedMinimalWidth = Float.NaN;
+            cachedMaximalWidth = Float.NaN;
+            cachedWidthsPass = pass;
+        }
+    }
+    
+    /**
+     * Obtains the number of the current layout pass of the viewport.
+     * @return the layout pass number
+     */
+    protected int getLayoutPass()
+    {
+        final Viewport vp = getViewport();
+        return (vp == null) ? -1 : vp.getLayoutPass();
     }
     
     /**
@@ -1066,11 +1261,8 @@ abstract public class ElementBox extends Box
      */
     protected void drawChildren(DrawStage turn)
     {
-        for (int i = startChild; i < endChild; i++)
-        {
-            Box subbox = getSubBox(i);
+        for (Box subbox : getViewport().getChildrenInDrawArea(this, startChild, endChild))
             subbox.draw(turn);
-        }
     }
     
     /**
@@ -1082,9 +1274,11 @@ abstract public class ElementBox extends Box
         Vector<ElementBox> list = getStackingContext().getElementsForZIndex(zindex);
         if (list != null)
         {
+            final Viewport vp = getViewport();
             for (ElementBox elem : list)
             {
-                elem.drawStackingContext(!elem.hasZIndex());
+                if (vp.isInDrawArea(elem))
+                    elem.drawStackingContext(!elem.hasZIndex());
             }
         }
     }
@@ -1251,8 +1445,12 @@ abstract public class ElementBox extends Box
      */
     protected void loadBasicStyle()
     {
-        // update the visual context based on the current style
+        // update the visual context based on the current style (the shared contexts are copied on write)
+        if (ctx.isShared())
+            ctx = ctx.copy();
         ctx.update(style);
+        // share the context with the sibling boxes of the same font, color, decoration and spacing
+        ctx = ctx.intern();
         
         // decode additional style properties
         display = style.getProperty("display");
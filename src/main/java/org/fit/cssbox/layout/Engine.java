@@ -21,6 +21,7 @@ package org.fit.cssbox.layout;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.BitSet;
 
 import org.fit.cssbox.css.DOMAnalyzer;
 import org.fit.cssbox.css.FontTable;
@@ -28,6 +29,8 @@ import org.fit.cssbox.render.BoxRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cz.vutbr.web.css.MediaSpec;
+
 /**
  * An abstraction of the whole rendering engine. The subclasses of this class represent
  * the combinations of the generic rendering engine, a device-dependent combination of
@@ -43,10 +46,18 @@ public abstract class Engine
     private DOMAnalyzer decoder;
     private URL baseurl;
     private Viewport viewport;
+    /** The image prefetcher used for the box tree that has not been laid out yet */
+    private ImagePrefetcher prefetcher;
 
     private BrowserConfig config;
     private boolean autoSizeUpdate;
     private boolean autoMediaUpdate;
+    private boolean repaintVisibleAreaOnly;
+    
+    /** The page specification used for the paginated layout or {@code null} for the continuous layout */
+    private PageSpec pageSpec;
+    private PageSpec defaultPageSpec;
+    private Pagination pagination;
     
     
     /** 
@@ -197,6 +208,126 @@ public abstract class Engine
      */
     public void createLayout(Dimension dim, Rectangle visibleRect, boolean performRendering)
     {
+        pageSpec = null;
+        defaultPageSpec = null;
+        pagination = null;
+        buildAndLayout(dim, visibleRect, performRendering);
+    }
+    
+    /**
+     * Creates a paginated layout of the document. The page size and margins are taken from the {@code @page}
+     * rules of the document style sheets; the given default page specification is used for the values
+     * not specified by the rules. The document is laid out for the {@code print} media and the width
+     * of the page content area and the resulting canvas is split to pages (see {@link Pagination}).
+     * The media specification of the analyzer is restored when the layout is finished. The pages are
+     * not rendered; they may be rendered individually later by the engine-specific methods.
+     * @param defaultPage the default page specification
+     */
+    public void createPagedLayout(PageSpec defaultPage)
+    {
+        final PageSpec page = defaultPage.apply(decoder.getPageRules());
+        final Dimension dim = new Dimension(page.getContentWidth(), page.getContentHeight());
+        pageSpec = page;
+        defaultPageSpec = defaultPage;
+        pagination = null;
+        //use the print media for the layout
+        final MediaSpec origMedia = decoder.getMediaSpec();
+        final MediaSpec printMedia = copyMediaSpec(origMedia, "print");
+        printMedia.setDimensions(page.getContentWidth(), page.getContentHeight());
+        printMedia.setDeviceDimensions(page.getWidth(), page.getHeight());
+        decoder.setMediaSpec(printMedia);
+        decoder.recomputeStyles();
+        try {
+            buildAndLayout(dim, new Rectangle(dim), false);
+        } finally {
+            decoder.setMediaSpec(origMedia);
+            decoder.recomputeStyles();
+        }
+        log.trace("Paginating for " + page);
+        pagination = new Pagination(viewport, page.getContentHeight());
+    }
+    
+    /**
+     * Obtains the page specification used for the current paginated layout.
+     * @return the page specification or {@code null} when the layout is not paginated
+     */
+    public PageSpec getPageSpec()
+    {
+        return pageSpec;
+    }
+    
+    /**
+     * Obtains the pages of the current paginated layout.
+     * @return the pagination or {@code null} when the layout is not paginated
+     */
+    public Pagination getPagination()
+    {
+        return pagination;
+    }
+    
+    /**
+     * Creates a copy of a media specification with a different media type.
+     * @param src the media specification to copy
+     * @param type the new media type
+     * @return the new media specification
+     */
+    protected static MediaSpec copyMediaSpec(MediaSpec src, String type)
+    {
+        final MediaSpec ret = new MediaSpec(type);
+        ret.setDimensions(src.getWidth(), src.getHeight());
+        ret.setDeviceDimensions(src.getDeviceWidth(), src.getDeviceHeight());
+        ret.setColor(src.getColor());
+        ret.setColorIndex(src.getColorIndex());
+        ret.setMonochrome(src.getMonochrome());
+        ret.setResolution(src.getResolution());
+        return ret;
+    }
+    
+    private void buildAndLayout(Dimension dim, Rectangle visibleRect, boolean performRendering)
+    {
+        buildBoxTree(dim, visibleRect);
+        layoutBoxTree(dim, performRendering);
+    }
+    
+    /**
+     * Creates the box tree for the given canvas and viewport size and position without computing
+     * the layout. The layout may be computed later using {@link #layoutBoxTree(Dimension, boolean)}.
+     * Together, these two methods are equivalent to {@link #createLayout(Dimension, Rectangle, boolean)};
+     * they may be used when the box tree creation (that accesses the DOM and computes the styles) must
+     * be separated from the layout (e.g. when several engines share the same DOM). The images
+     * prefetched for the box tree remain available until the layout is computed.
+     * @param dim the total canvas size 
+     * @param visibleRect the viewport (the visible area) size and position
+     */
+    public void createBoxTree(Dimension dim, Rectangle visibleRect)
+    {
+        buildBoxTree(dim, visibleRect);
+    }
+    
+    /**
+     * Finishes the image prefetching and detaches the prefetcher from the box factory so that
+     * the prefetched images are not kept with the viewport. The images not loaded yet will be
+     * loaded synchronously when needed.
+     */
+    private void releasePrefetcher()
+    {
+        if (prefetcher != null)
+        {
+            prefetcher.close();
+            if (viewport != null && viewport.getFactory() != null
+                    && viewport.getFactory().getImagePrefetcher() == prefetcher)
+                viewport.getFactory().setImagePrefetcher(null);
+            prefetcher = null;
+        }
+    }
+    
+    /**
+     * Creates the box tree and initializes the viewport. The image prefetcher used (if any)
+     * is kept until the layout is computed by {@link #layoutBoxTree(Dimension, boolean)}.
+     */
+    private void buildBoxTree(Dimension dim, Rectangle visibleRect)
+    {
+        releasePrefetcher(); //a previous box tree has not been laid out
         initOutputMedia(dim.width, dim.height);
         
         if (autoMediaUpdate)
@@ -210,34 +341,159 @@ public abstract class Engine
         factory.setConfig(config);
         factory.reset();
         VisualContext ctx = createVisualContext(config, decoder.getFontTable());
-        viewport = factory.createViewportTree(root, ctx, dim.width, dim.height);
-        log.trace("We have " + factory.next_order + " boxes");
-        viewport.setVisibleRect(new Rectangle(visibleRect.x, visibleRect.y, visibleRect.width, visibleRect.height));
-        viewport.initSubtree();
-        
-        log.trace("Layout for "+dim.width+"px");
-        viewport.doLayout(dim.width, true, true);
-        log.trace("Resulting size: " + viewport.getWidth() + "x" + viewport.getHeight() + " (" + viewport + ")");
+        if (config.getPrefetchImages())
+        {
+            log.trace("Prefetching images");
+            prefetcher = new ImagePrefetcher(config, ctx.getImageLoader());
+            prefetcher.prefetch(root, decoder, baseurl);
+            factory.setImagePrefetcher(prefetcher);
+        }
+        try {
+            viewport = factory.createViewportTree(root, ctx, dim.width, dim.height);
+            log.trace("We have " + factory.next_order + " boxes");
+            viewport.setVisibleRect(new Rectangle(visibleRect.x, visibleRect.y, visibleRect.width, visibleRect.height));
+            viewport.initSubtree();
+        } catch (RuntimeException e) {
+            releasePrefetcher();
+            throw e;
+        }
+    }
 
-        if (autoSizeUpdate)
+    /**
+     * Recomputes the layout of the existing box tree for a new canvas size where the visible area size
+     * is equal to the whole canvas. See {@link #relayout(Dimension, Rectangle, boolean)}.
+     * @param dim the new viewport size
+     */
+    public void relayout(Dimension dim)
+    {
+        relayout(dim, new Rectangle(dim));
+    }
+    
+    /**
+     * Recomputes the layout of the existing box tree for a new canvas size and renders the result.
+     * See {@link #relayout(Dimension, Rectangle, boolean)}.
+     * @param dim the new total canvas size 
+     * @param visibleRect the new viewport (the visible area) size and position
+     */
+    public void relayout(Dimension dim, Rectangle visibleRect)
+    {
+        relayout(dim, visibleRect, true);
+    }
+    
+    /**
+     * Recomputes the layout for a new canvas and viewport size (e.g. when a browser window is resized).
+     * Unlike {@link #createLayout(Dimension, Rectangle, boolean)}, the existing box tree and the computed
+     * styles are reused and only the sizes and positions of the boxes are computed again. The block boxes
+     * with an explicit width that establish a new block formatting context reuse their previous content
+     * layout when their width has not changed. When the layout has not been created yet, the result of
+     * some {@code @media} rules changes for the new size (with the automatic media update enabled)
+     * or the viewport-relative units are used in the document, the whole layout is created again using
+     * {@link #createLayout(Dimension, Rectangle, boolean)}.
+     * When the current layout is paginated (see {@link #createPagedLayout(PageSpec)}), the canvas size
+     * is given by the page and the document is paginated again.
+     * @param dim the new total canvas size 
+     * @param visibleRect the new viewport (the visible area) size and position
+     * @param performRendering when set to true, the page is rendered using the associated renderer
+     */
+    public void relayout(Dimension dim, Rectangle visibleRect, boolean performRendering)
+    {
+        if (pageSpec != null)
         {
-            log.trace("Updating viewport size");
-            viewport.updateBounds(new Dimension(dim.width, dim.height));
-            log.trace("Resulting size: " + viewport.getWidth() + "x" + viewport.getHeight() + " (" + viewport + ")");
+            relayoutPages();
+            return;
         }
-        
-        if (viewport.getWidth() > dim.width || viewport.getHeight() > dim.height)
+        if (viewport == null || viewport.getViewportUnitsUsed() || (autoMediaUpdate && mediaChanged(visibleRect)))
         {
-            initOutputMedia(Math.max(viewport.getWidth(), dim.width), Math.max(viewport.getHeight(), dim.height));
+            createLayout(dim, visibleRect, performRendering);
         }
-        
-        log.trace("Positioning for "+viewport.getWidth()+"x"+viewport.getHeight()+"px");
-        viewport.absolutePositions();
-        
-        if (performRendering)
+        else
         {
-            log.trace("Drawing");
-            renderViewport(viewport);
+            initOutputMedia(dim.width, dim.height);
+            viewport.setVisibleRect(new Rectangle(visibleRect.x, visibleRect.y, visibleRect.width, visibleRect.height));
+            viewport.setCanvasSize(dim.width, dim.height);
+            log.trace("Reinitializing the box tree");
+            viewport.reinitSubtree();
+            layoutBoxTree(dim, performRendering);
+        }
+    }
+    
+    /**
+     * Updates the media dimensions according to the new visible area and checks whether this
+     * changes the result of any {@code @media} rule.
+     * @param visibleRect the new visible area
+     * @return {@code true} when the element styles must be recomputed
+     */
+    private boolean mediaChanged(Rectangle visibleRect)
+    {
+        //the media specification may be shared with the caller; use an updated copy
+        final MediaSpec current = decoder.getMediaSpec();
+        final MediaSpec updated = copyMediaSpec(current, current.getType());
+        updated.setDimensions(visibleRect.width, visibleRect.height);
+        final BitSet before = decoder.evaluateMediaQueries(current);
+        final BitSet after = decoder.evaluateMediaQueries(updated);
+        decoder.setMediaSpec(updated);
+        return !before.equals(after);
+    }
+    
+    /**
+     * Recomputes the current paginated layout. The box tree is reused unless the viewport-relative
+     * units are used.
+     */
+    private void relayoutPages()
+    {
+        if (viewport.getViewportUnitsUsed())
+        {
+            createPagedLayout(defaultPageSpec);
+        }
+        else
+        {
+            final Dimension dim = new Dimension(pageSpec.getContentWidth(), pageSpec.getContentHeight());
+            pagination = null;
+            initOutputMedia(dim.width, dim.height);
+            viewport.setVisibleRect(new Rectangle(dim));
+            viewport.setCanvasSize(dim.width, dim.height);
+            log.trace("Reinitializing the box tree for pages");
+            viewport.reinitSubtree();
+            layoutBoxTree(dim, false);
+            pagination = new Pagination(viewport, pageSpec.getContentHeight());
+        }
+    }
+    
+    /**
+     * Computes the layout of the box tree created by {@link #createBoxTree(Dimension, Rectangle)},
+     * computes the absolute positions and optionally renders the result.
+     * @param dim the total canvas size 
+     * @param performRendering when set to true, the page is rendered using the associated renderer
+     */
+    public void layoutBoxTree(Dimension dim, boolean performRendering)
+    {
+        try {
+            log.trace("Layout for "+dim.width+"px");
+            viewport.doLayout(dim.width, true, true);
+            log.trace("Resulting size: " + viewport.getWidth() + "x" + viewport.getHeight() + " (" + viewport + ")");
+
+            if (autoSizeUpdate)
+            {
+                log.trace("Updating viewport size");
+                viewport.updateBounds(new Dimension(dim.width, dim.height));
+                log.trace("Resulting size: " + viewport.getWidth() + "x" + viewport.getHeight() + " (" + viewport + ")");
+            }
+    
+            if (viewport.getWidth() > dim.width || viewport.getHeight() > dim.height)
+            {
+                initOutputMedia(Math.max(viewport.getWidth(), dim.width), Math.max(viewport.getHeight(), dim.height));
+            }
+    
+            log.trace("Positioning for "+viewport.getWidth()+"x"+viewport.getHeight()+"px");
+            viewport.absolutePositions();
+    
+            if (performRendering)
+            {
+                log.trace("Drawing");
+                renderViewport(viewport);
+            }
+        } finally {
+            releasePrefetcher(); //the images have been used by the box tree
         }
     }
 
@@ -249,7 +505,10 @@ public abstract class Engine
     {
         viewport.setVisibleRect(visibleRect);
         viewport.absolutePositions();
-        renderViewport(viewport);
+        if (repaintVisibleAreaOnly)
+            renderViewport(viewport, visibleRect);
+        else
+            renderViewport(viewport);
     }
     
     /**
@@ -275,6 +534,44 @@ public abstract class Engine
         }
     }
     
+    /**
+     * Renders the parts of the viewport that may be visible in the given area using the internal renderer.
+     * The subtrees that are not visible in the area are skipped.
+     * @param viewport the viewport to be rendered
+     * @param area the area to be rendered
+     */
+    protected void renderViewport(Viewport viewport, Rectangle area)
+    {
+        try {
+            final BoxRenderer r = getRenderer();
+            viewport.draw(r, area);
+            r.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Enables or disables repainting only the visible area in {@link #updateVisibleArea(Rectangle)}.
+     * This is useful for the renderers that paint to a persistent canvas (e.g. an image) that
+     * is displayed partially; the rest of the canvas is not updated then. By default, the whole
+     * viewport is repainted.
+     * @param repaintVisibleAreaOnly {@code true} for repainting the visible area only
+     */
+    public void setRepaintVisibleAreaOnly(boolean repaintVisibleAreaOnly)
+    {
+        this.repaintVisibleAreaOnly = repaintVisibleAreaOnly;
+    }
+    
+    /**
+     * Checks whether only the visible area is repainted when the visible area is updated.
+     * @return {@code true} when only the visible area is repainted
+     */
+    public boolean getRepaintVisibleAreaOnly()
+    {
+        return repaintVisibleAreaOnly;
+    }
+    
     /**
      * Enables or disables the automatic viewport size update according to its contents. This is enabled by default.
      * @param b <code>true</code> for enable, <code>false</code> for disable.
@@ -143,7 +143,7 @@ public class HTMLBoxFactory
             String src = HTMLNorm.getAttribute(e, "src");
             ReplacedImage img = new ReplacedImage(rbox, rbox.getVisualContext(), factory.getBaseURL(), src);
             if (factory.getConfig().getLoadImages())
-                img.setImage(parent.getVisualContext().getImageLoader().loadImage(img.getUrl()));
+                img.setImage(parent.getVisualContext().loadImage(img.getUrl()));
             rbox.setContentObj(img);
             
             if (rbox.isBlock())
@@ -186,7 +186,7 @@ public class HTMLBoxFactory
                         content = new ReplacedImage(rbox, rbox.getVisualContext(), base, dataurl);
                         if (factory.getConfig().getLoadImages())
                         {
-                            ContentImage cimg = parent.getVisualContext().getImageLoader().loadImage(((ReplacedImage) content).getUrl());
+                            ContentImage cimg = parent.getVisualContext().loadImage(((ReplacedImage) content).getUrl());
                             ((ReplacedImage) content).setImage(cimg);
                         }
                     }
@@ -0,0 +1,289 @@
+/*
+ * ImagePrefetcher.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:26:15 by agent
+ */
+package org.fit.cssbox.layout;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.css.HTMLNorm;
+import org.fit.cssbox.io.ContentObserver;
+import org.fit.net.DataURLHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import cz.vutbr.web.css.CSSProperty;
+import cz.vutbr.web.css.NodeData;
+import cz.vutbr.web.css.TermURI;
+
+/**
+ * An image prefetcher that walks the styled DOM tree before the box tree is created, collects
+ * the URLs of the content images (<code>&lt;img&gt;</code> elements), list markers and background
+ * images and loads them concurrently. The box tree creation then obtains the already loaded
+ * images using {@link #getImage(URL)} instead of loading them synchronously one by one.
+ *
+ * The loading of each image is limited by {@link BrowserConfig#getImageLoadTimeout()} and the
+ * whole prefetching is limited by {@link BrowserConfig#getImagePrefetchTimeout()}. The images
+ * that could not be loaded in time are treated as failed.
+ *
+ * @author agent
+ */
+public class ImagePrefetcher
+{
+    private static Logger log = LoggerFactory.getLogger(ImagePrefetcher.class);
+
+    /** Number of threads used when no executor is configured */
+    public static final int DEFAULT_THREADS = 8;
+
+    private BrowserConfig config;
+    private ImageLoader loader;
+    private ExecutorService executor;
+    private boolean ownExecutor;
+    private ConcurrentHashMap<String, Fetch> fetches;
+    private long deadline;
+
+
+    /**
+     * Creates a new prefetcher.
+     * @param config the browser configuration
+     * @param loader the image loader used for loading the individual images
+     */
+    public ImagePrefetcher(BrowserConfig config, ImageLoader loader)
+    {
+        this.config = config;
+        this.loader = loader;
+        this.fetches = new ConcurrentHashMap<>();
+        this.deadline = Long.MAX_VALUE;
+        executor = config.getImagePrefetchExecutor();
+        if (executor == null)
+        {
+            executor = Executors.newFixedThreadPool(DEFAULT_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread t = new Thread(r, "cssbox-image-prefetch");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            ownExecutor = true;
+        }
+    }
+
+    /**
+     * Collects the image URLs from the styled DOM subtree and starts loading the images.
+     * The styles must be already available in the decoder.
+     * @param root the root element of the subtree
+     * @param decoder the CSS decoder used for obtaining the element styles
+     * @param baseurl the base URL used for the content images
+     */
+    public void prefetch(Element root, DOMAnalyzer decoder, URL baseurl)
+    {
+        deadline = System.currentTimeMillis() + config.getImagePrefetchTimeout();
+        scanElement(root, decoder, baseurl);
+        log.debug("Prefetching {} images", fetches.size());
+    }
+
+    /**
+     * Starts loading the image from the given URL unless it is already being loaded.
+     * @param url the image URL
+     */
+    public void prefetch(URL url)
+    {
+        final String key = url.toExternalForm();
+        if (!fetches.containsKey(key))
+        {
+            final Fetch fetch = new Fetch(url);
+            if (fetches.putIfAbsent(key, fetch) == null)
+                fetch.future = executor.submit(fetch);
+        }
+    }
+
+    /**
+     * Checks whether the image from the given URL has been prefetched.
+     * @param url the image URL
+     * @return {@code true} when the image is being prefetched (or already loaded)
+     */
+    public boolean isPrefetched(URL url)
+    {
+        return fetches.containsKey(url.toExternalForm());
+    }
+
+    /**
+     * Obtains a prefetched image. Waits for the image when it has not been loaded yet.
+     * @param url the image URL
+     * @return the loaded image or {@code null} when the image could not be loaded in time
+     */
+    public ContentImage getImage(URL url)
+    {
+        final Fetch fetch = fetches.get(url.toExternalForm());
+        if (fetch == null || fetch.future == null)
+            return null;
+        while (true)
+        {
+            final long now = System.currentTimeMillis();
+            final long limit = (fetch.started < 0) ? deadline : Math.min(fetch.started + config.getImageLoadTimeout(), deadline);
+            try {
+                if (limit <= now)
+                {
+                    if (fetch.future.isDone())
+                        return fetch.future.get();
+                    else
+                        throw new TimeoutException();
+                }
+                return fetch.future.get(limit - now, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (fetch.started < 0 && System.currentTimeMillis() < deadline)
+                    continue; //not started yet, wait more
+                fetch.future.cancel(true);
+                log.warn("Image loading timeout: {}", url);
+                observeLoadFailed(url);
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (CancellationException e) {
+                return null;
+            } catch (ExecutionException e) {
+                log.error("Image loading error: {} ({})", url, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Finishes the prefetching. The unfinished image loading is cancelled and the corresponding
+     * images are forgotten so that they will be loaded synchronously when needed. The already loaded
+     * images remain available. The executor is released when it has been created by the prefetcher.
+     */
+    public void close()
+    {
+        for (Iterator<Fetch> it = fetches.values().iterator(); it.hasNext(); )
+        {
+            final Fetch fetch = it.next();
+            if (fetch.future == null || !fetch.future.isDone())
+            {
+                if (fetch.future != null)
+                    fetch.future.cancel(true);
+                it.remove();
+            }
+        }
+        if (ownExecutor)
+            executor.shutdownNow();
+    }
+
+    //=================================================================================
+
+    private void scanElement(Element el, DOMAnalyzer decoder, URL baseurl)
+    {
+        final NodeData style = decoder.getElementStyleInherited(el);
+        if (style != null)
+        {
+            if (style.getProperty("display") == CSSProperty.Display.NONE)
+                return; //no boxes are created for the subtree
+            if (config.getUseHTML() && config.getLoadImages() && !config.getReplaceImagesWithAlt()
+                    && el.getTagName().equalsIgnoreCase("img"))
+            {
+                final String src = HTMLNorm.getAttribute(el, "src");
+                if (!src.trim().isEmpty())
+                    prefetch(baseurl, src);
+            }
+            if (config.getLoadBackgroundImages())
+            {
+                if (style.getProperty("list-style-image") == CSSProperty.ListStyleImage.uri)
+                    prefetch(style.getValue(TermURI.class, "list-style-image"));
+                final int count = style.getListSize("background-image", true);
+                for (int i = 0; i < count; i++)
+                {
+                    if (style.getProperty("background-image", i) == CSSProperty.BackgroundImage.uri)
+                        prefetch(style.getValue(TermURI.class, "background-image", i));
+                }
+            }
+        }
+        final NodeList children = el.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++)
+        {
+            final Node child = children.item(i);
+            if (child.getNodeType() == Node.ELEMENT_NODE)
+                scanElement((Element) child, decoder, baseurl);
+        }
+    }
+
+    private void prefetch(TermURI urlstring)
+    {
+        if (urlstring != null)
+            prefetch(urlstring.getBase(), urlstring.getValue());
+    }
+
+    private void prefetch(URL base, String urlstring)
+    {
+        try {
+            prefetch(DataURLHandler.createURL(base, urlstring));
+        } catch (MalformedURLException e) {
+            //invalid URLs are reported later during the box tree creation
+        }
+    }
+
+    private void observeLoadFailed(URL url)
+    {
+        final ContentObserver observer = config.getContentObserver();
+        if (observer != null)
+            observer.contentLoadFailed(url);
+    }
+
+    //=================================================================================
+
+    /**
+     * A single image loading task.
+     */
+    private class Fetch implements Callable<ContentImage>
+    {
+        public final URL url;
+        public volatile long started = -1;
+        public volatile Future<ContentImage> future;
+
+        public Fetch(URL url)
+        {
+            this.url = url;
+        }
+
+        @Override
+        public ContentImage call() throws Exception
+        {
+            started = System.currentTimeMillis();
+            return loader.loadImage(url);
+        }
+    }
+
+}
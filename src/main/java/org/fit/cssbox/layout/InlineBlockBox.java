@@ -125,13 +125,13 @@ public class InlineBlockBox extends BlockBox implements InlineElement
     @Override
     public float getFirstLineLength()
     {
-        return getMaximalContentWidth();
+        return getMaximalContentWidthCached();
     }
 
     @Override
     public float getLastLineLength()
     {
-        return getMaximalContentWidth();
+        return getMaximalContentWidthCached();
     }
 
     @Override
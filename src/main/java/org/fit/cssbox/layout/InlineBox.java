@@ -455,6 +455,24 @@ public class InlineBox extends ElementBox implements InlineElement
 
     @Override
     public float getMinimalWidth()
+    {
+        float ret = getCachedMinimalWidth();
+        if (Float.isNaN(ret))
+        {
+            ret = getMinimalContentWidth();
+            setCachedMinimalWidth(ret);
+        }
+        //increase by margin, padding, border
+        ret += margin.left + padding.left + border.left +
+               margin.right + padding.right + border.right;
+        return ret;
+    }
+    
+    /**
+     * Computes the minimal width of the box content from the contained sub-boxes.
+     * @return the minimal content width
+     */
+    protected float getMinimalContentWidth()
     {
         float ret = 0;
         if (allowsWrapping())
@@ -489,14 +507,29 @@ public class InlineBox extends ElementBox implements InlineElement
             for (int i = startChild; i < endChild; i++)
                 ret += getSubBox(i).getMaximalWidth();
         }
+        return ret;
+    }
+    
+    @Override
+    public float getMaximalWidth()
+    {
+        float ret = getCachedMaximalWidth();
+        if (Float.isNaN(ret))
+        {
+            ret = getMaximalContentWidth();
+            setCachedMaximalWidth(ret);
+        }
         //increase by margin, padding, border
         ret += margin.left + padding.left + border.left +
                margin.right + padding.right + border.right;
         return ret;
     }
     
-    @Override
-    public float getMaximalWidth()
+    /**
+     * Computes the maximal width of the box content from the contained sub-boxes.
+     * @return the maximal content width
+     */
+    protected float getMaximalContentWidth()
     {
         float ret = 0;
         if (!preservesLineBreaks())
@@ -522,9 +555,6 @@ public class InlineBox extends ElementBox implements InlineElement
                 total += ((Inline) cur).getLastLineLength();
             }
         }
-        //increase by margin, padding, border
-        ret += margin.left + padding.left + border.left +
-               margin.right + padding.right + border.right;
         return ret;
     }
     
@@ -659,6 +689,7 @@ public class InlineBox extends ElementBox implements InlineElement
         content = new Dimension(0, 0);
         
         loadPosition();
+        invalidateParentIntrinsicWidths();
     }
     
     @Override
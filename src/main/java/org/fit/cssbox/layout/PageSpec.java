@@ -0,0 +1,290 @@
+/*
+ * PageSpec.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 18:01:53 by agent
+ */
+package org.fit.cssbox.layout;
+
+import java.util.List;
+
+import org.fit.cssbox.css.CSSUnits;
+
+import cz.vutbr.web.css.Declaration;
+import cz.vutbr.web.css.Rule;
+import cz.vutbr.web.css.RulePage;
+import cz.vutbr.web.css.Term;
+import cz.vutbr.web.css.TermIdent;
+import cz.vutbr.web.css.TermLength;
+import cz.vutbr.web.css.TermLengthOrPercent;
+
+/**
+ * The size and margins of the pages used for the paginated layout. All the lengths are in pixels.
+ * The page specification may be obtained from the {@code @page} rules of the document style sheets.
+ *
+ * @author agent
+ */
+public class PageSpec
+{
+    /** The A4 page width (210mm) */
+    public static final float A4_WIDTH = mm(210);
+
+    /** The A4 page height (297mm) */
+    public static final float A4_HEIGHT = mm(297);
+
+    private float width;
+    private float height;
+    private LengthSet margin;
+
+
+    /**
+     * Creates a new A4 portrait page specification with no margins.
+     */
+    public PageSpec()
+    {
+        this(A4_WIDTH, A4_HEIGHT, new LengthSet());
+    }
+
+    /**
+     * Creates a new page specification.
+     * @param width the page width in pixels
+     * @param height the page height in pixels
+     * @param margin the page margins in pixels
+     */
+    public PageSpec(float width, float height, LengthSet margin)
+    {
+        this.width = width;
+        this.height = height;
+        this.margin = new LengthSet(margin);
+    }
+
+    /**
+     * Creates a copy of an existing page specification.
+     * @param src the source specification
+     */
+    public PageSpec(PageSpec src)
+    {
+        this(src.width, src.height, src.margin);
+    }
+
+    /**
+     * @return the total page width including the margins
+     */
+    public float getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return the total page height including the margins
+     */
+    public float getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * @return the page margins
+     */
+    public LengthSet getMargin()
+    {
+        return margin;
+    }
+
+    /**
+     * @return the width of the page area available for the contents
+     */
+    public float getContentWidth()
+    {
+        return Math.max(1, width - margin.left - margin.right);
+    }
+
+    /**
+     * @return the height of the page area available for the contents
+     */
+    public float getContentHeight()
+    {
+        return Math.max(1, height - margin.top - margin.bottom);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PageSpec[" + width + "x" + height + ", margin=" + margin + "]";
+    }
+
+    //=========================================================================
+
+    /**
+     * Creates a new page specification by applying the {@code @page} rules to this specification.
+     * Only the {@code size} and the {@code margin} properties are supported; the rules with
+     * a page selector (e.g. {@code :first}) are ignored.
+     * @param rules the page rules in the order of their appearance
+     * @return the resulting page specification
+     */
+    public PageSpec apply(List<RulePage> rules)
+    {
+        final PageSpec ret = new PageSpec(this);
+        for (RulePage rule : rules)
+        {
+            if (rule.getPseudo() == null || rule.getPseudo().isEmpty())
+            {
+                for (Rule<?> item : rule)
+                {
+                    if (item instanceof Declaration)
+                        ret.applyDeclaration((Declaration) item);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private void applyDeclaration(Declaration d)
+    {
+        final String name = d.getProperty();
+        if (name.equals("size"))
+            applySize(d);
+        else if (name.equals("margin"))
+        {
+            final int n = d.size();
+            if (n >= 1 && n <= 4)
+            {
+                margin.top = length(d.get(0), height, margin.top);
+                margin.right = length(d.get(n > 1 ? 1 : 0), width, margin.right);
+                margin.bottom = length(d.get(n > 2 ? 2 : 0), height, margin.bottom);
+                margin.left = length(d.get(n > 3 ? 3 : (n > 1 ? 1 : 0)), width, margin.left);
+            }
+        }
+        else if (name.equals("margin-top") && d.size() == 1)
+            margin.top = length(d.get(0), height, margin.top);
+        else if (name.equals("margin-right") && d.size() == 1)
+            margin.right = length(d.get(0), width, margin.right);
+        else if (name.equals("margin-bottom") && d.size() == 1)
+            margin.bottom = length(d.get(0), height, margin.bottom);
+        else if (name.equals("margin-left") && d.size() == 1)
+            margin.left = length(d.get(0), width, margin.left);
+    }
+
+    private void applySize(Declaration d)
+    {
+        float w = width;
+        float h = height;
+        int lengths = 0;
+        Boolean landscape = null;
+        for (Term<?> term : d)
+        {
+            if (term instanceof TermLength)
+            {
+                final float len = length(term, 0, 0);
+                if (lengths == 0)
+                    w = h = len;
+                else if (lengths == 1)
+                    h = len;
+                lengths++;
+            }
+            else if (term instanceof TermIdent)
+            {
+                final String ident = ((TermIdent) term).getValue().toLowerCase();
+                if (ident.equals("landscape"))
+                    landscape = true;
+                else if (ident.equals("portrait"))
+                    landscape = false;
+                else if (!ident.equals("auto"))
+                {
+                    final float[] size = namedSize(ident);
+                    if (size != null)
+                    {
+                        w = size[0];
+                        h = size[1];
+                    }
+                }
+            }
+        }
+        if (landscape != null && (landscape ? w < h : w > h))
+        {
+            final float tmp = w;
+            w = h;
+            h = tmp;
+        }
+        width = w;
+        height = h;
+    }
+
+    private static float[] namedSize(String name)
+    {
+        switch (name)
+        {
+            case "a5": return new float[] {mm(148), mm(210)};
+            case "a4": return new float[] {mm(210), mm(297)};
+            case "a3": return new float[] {mm(297), mm(420)};
+            case "b5": return new float[] {mm(176), mm(250)};
+            case "b4": return new float[] {mm(250), mm(353)};
+            case "letter": return new float[] {8.5f * CSSUnits.dpi, 11 * CSSUnits.dpi};
+            case "legal": return new float[] {8.5f * CSSUnits.dpi, 14 * CSSUnits.dpi};
+            case "ledger": return new float[] {11 * CSSUnits.dpi, 17 * CSSUnits.dpi};
+            default: return null;
+        }
+    }
+
+    /**
+     * Converts a length used in a page rule to pixels. The page context has no font, the relative
+     * font units are computed from the default font size.
+     * @param term the length term
+     * @param whole the length corresponding to 100%
+     * @param defval the value used for unsupported terms
+     * @return the length in pixels
+     */
+    private static float length(Term<?> term, float whole, float defval)
+    {
+        if (!(term instanceof TermLengthOrPercent))
+            return defval;
+        final TermLengthOrPercent spec = (TermLengthOrPercent) term;
+        final float nval = spec.getValue();
+        if (spec.isPercentage())
+            return whole * nval / 100.0f;
+        final TermLength.Unit unit = spec.getUnit();
+        if (unit == null)
+            return (nval == 0) ? 0 : defval;
+        switch (unit)
+        {
+            case pt:
+                return nval * CSSUnits.dpi / 72.0f;
+            case in:
+                return nval * CSSUnits.dpi;
+            case cm:
+                return (nval * CSSUnits.dpi) / 2.54f;
+            case mm:
+                return mm(nval);
+            case q:
+                return (nval * CSSUnits.dpi) / (2.54f * 40.0f);
+            case pc:
+                return (nval * 12 * CSSUnits.dpi) / 72;
+            case px:
+                return nval;
+            case em:
+            case rem:
+                return CSSUnits.pixels(CSSUnits.medium_font * nval);
+            default:
+                return defval;
+        }
+    }
+
+    private static float mm(float value)
+    {
+        return value * CSSUnits.dpi / 25.4f;
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Pagination.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 18:01:53 by agent
+ */
+package org.fit.cssbox.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Splits the laid out viewport to pages. Each page corresponds to a horizontal slice of the canvas
+ * whose height does not exceed the page content height. The page breaks are placed at the boundaries
+ * of the blocks, the lines and the table rows so that the text lines and the replaced elements are not
+ * cut. The {@code page-break-before} and {@code page-break-after} properties force a page break, the
+ * {@code page-break-inside: avoid} property prevents the breaks inside of a block when possible.
+ * When no suitable break position exists on a page (e.g. a single image higher than the page),
+ * the contents is cut at the page bottom.
+ *
+ * @author agent
+ */
+public class Pagination
+{
+    /** The top y coordinates of the pages; the last element is the bottom of the last page */
+    private final float[] breaks;
+
+
+    /**
+     * Computes the pagination of a viewport with the computed layout and absolute positions.
+     * @param viewport the viewport to be paginated
+     * @param pageHeight the height of the page content area
+     */
+    public Pagination(Viewport viewport, float pageHeight)
+    {
+        final List<Float> candidates = new ArrayList<>();
+        final List<Float> forced = new ArrayList<>();
+        final List<float[]> obstacles = new ArrayList<>();
+        collect(viewport, candidates, forced, obstacles);
+        final float[] allowed = filterCandidates(candidates, obstacles);
+        final float[] forcedArr = toSortedArray(forced);
+        breaks = computeBreaks(allowed, forcedArr, Math.max(1, pageHeight), viewport.getHeight());
+    }
+
+    /**
+     * @return the number of pages
+     */
+    public int getPageCount()
+    {
+        return breaks.length - 1;
+    }
+
+    /**
+     * Obtains the top y coordinate of the given page in the canvas.
+     * @param index the page index starting with 0
+     * @return the top coordinate (inclusive)
+     * @throws IndexOutOfBoundsException when the page does not exist
+     */
+    public float getPageTop(int index)
+    {
+        checkIndex(index);
+        return breaks[index];
+    }
+
+    /**
+     * Obtains the bottom y coordinate of the given page in the canvas.
+     * @param index the page index starting with 0
+     * @return the bottom coordinate (exclusive)
+     * @throws IndexOutOfBoundsException when the page does not exist
+     */
+    public float getPageBottom(int index)
+    {
+        checkIndex(index);
+        return breaks[index + 1];
+    }
+
+    /**
+     * Obtains the part of the canvas that corresponds to the given page.
+     * @param index the page index starting with 0
+     * @param width the canvas width
+     * @return the page area in the canvas coordinates
+     * @throws IndexOutOfBoundsException when the page does not exist
+     */
+    public Rectangle getPageArea(int index, float width)
+    {
+        checkIndex(index);
+        return new Rectangle(0, breaks[index], width, breaks[index + 1] - breaks[index]);
+    }
+
+    /**
+     * Checks whether a page with the given index exists.
+     * @param index the page index
+     * @throws IndexOutOfBoundsException when the page does not exist
+     */
+    public void checkIndex(int index)
+    {
+        if (index < 0 || index >= getPageCount())
+            throw new IndexOutOfBoundsException("Page " + index + " out of range 0.." + (getPageCount() - 1));
+    }
+
+    //=========================================================================
+
+    /**
+     * Goes through the box subtree and collects the possible break positions (block boundaries),
+     * the forced breaks and the obstacles (the vertical intervals that should not be broken).
+     */
+    private void collect(Box box, List<Float> candidates, List<Float> forced, List<float[]> obstacles)
+    {
+        if (!box.isDisplayed())
+            return;
+        if (box instanceof TextBox)
+        {
+            final Rectangle b = box.getAbsoluteBounds();
+            obstacles.add(new float[] {b.y, b.y + b.height});
+        }
+        else if (box instanceof ElementBox)
+        {
+            final ElementBox eb = (ElementBox) box;
+            final Rectangle b = eb.getAbsoluteBorderBounds();
+            final float top = b.y;
+            final float bottom = b.y + b.height;
+            if (box instanceof ReplacedBox || box instanceof InlineBlockBox)
+            {
+                obstacles.add(new float[] {top, bottom}); //atomic boxes
+            }
+            else
+            {
+                boolean recurse = true;
+                if (box instanceof BlockBox)
+                {
+                    final BlockBox block = (BlockBox) box;
+                    candidates.add(top);
+                    candidates.add(bottom);
+                    if (block.forcesPageBreakBefore())
+                        forced.add(top);
+                    if (block.forcesPageBreakAfter())
+                        forced.add(bottom);
+                    if (block.avoidsPageBreakInside())
+                    {
+                        obstacles.add(new float[] {top, bottom});
+                        recurse = false; //no breaks inside
+                    }
+                }
+                if (recurse)
+                {
+                    for (int i = 0; i < eb.getSubBoxNumber(); i++)
+                        collect(eb.getSubBox(i), candidates, forced, obstacles);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the break candidates that lie inside of any obstacle. A break is possible at the obstacle
+     * boundaries; therefore, the bottom of each obstacle is a candidate as well (e.g. the line ends).
+     * @return the sorted array of the allowed break positions
+     */
+    private float[] filterCandidates(List<Float> candidates, List<float[]> obstacles)
+    {
+        for (float[] o : obstacles)
+            candidates.add(o[1]);
+        final float[] cand = toSortedArray(candidates);
+        //merge the obstacles to disjoint intervals
+        final float[][] obs = obstacles.toArray(new float[obstacles.size()][]);
+        Arrays.sort(obs, new Comparator<float[]>() {
+            @Override
+            public int compare(float[] o1, float[] o2)
+            {
+                return Float.compare(o1[0], o2[0]);
+            }
+        });
+        final List<float[]> merged = new ArrayList<>();
+        for (float[] o : obs)
+        {
+            final float[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && o[0] < last[1])
+                last[1] = Math.max(last[1], o[1]);
+            else
+                merged.add(new float[] {o[0], o[1]});
+        }
+        //filter the candidates
+        final float[] ret = new float[cand.length];
+        int cnt = 0;
+        int oi = 0;
+        for (float c : cand)
+        {
+            while (oi < merged.size() && merged.get(oi)[1] <= c)
+                oi++;
+            final boolean inside = oi < merged.size() && merged.get(oi)[0] < c;
+            if (!inside && (cnt == 0 || ret[cnt - 1] != c))
+                ret[cnt++] = c;
+        }
+        return Arrays.copyOf(ret, cnt);
+    }
+
+    /**
+     * Computes the page breaks. The page is extended as much as possible up to the nearest
+     * forced break.
+     */
+    private static float[] computeBreaks(float[] allowed, float[] forced, float pageHeight, float totalHeight)
+    {
+        final List<Float> ret = new ArrayList<>();
+        float top = 0;
+        ret.add(top);
+        int fi = 0;
+        while (top < totalHeight)
+        {
+            final float limit = top + pageHeight;
+            while (fi < forced.length && forced[fi] <= top)
+                fi++;
+            float end;
+            if (fi < forced.length && forced[fi] <= limit && forced[fi] < totalHeight)
+                end = forced[fi];
+            else if (limit >= totalHeight)
+                end = totalHeight;
+            else
+            {
+                //the last allowed break position on the page
+                int pos = Arrays.binarySearch(allowed, limit);
+                if (pos < 0) pos = -pos - 2; //the last position lower than the limit
+                end = (pos >= 0 && allowed[pos] > top) ? allowed[pos] : limit;
+            }
+            ret.add(end);
+            top = end;
+        }
+        if (ret.size() == 1)
+            ret.add(pageHeight); //empty document, use one blank page
+        final float[] arr = new float[ret.size()];
+        for (int i = 0; i < arr.length; i++)
+            arr[i] = ret.get(i);
+        return arr;
+    }
+
+    private static float[] toSortedArray(List<Float> list)
+    {
+        final float[] ret = new float[list.size()];
+        for (int i = 0; i < ret.length; i++)
+            ret[i] = list.get(i);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+}
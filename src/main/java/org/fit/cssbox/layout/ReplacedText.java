@@ -106,12 +106,13 @@ public class ReplacedText extends ReplacedContent
     private void createDecoder()
     {
         decoder = new DOMAnalyzer(doc, base);
+        decoder.setStyleSheetCache(owner.getVisualContext().getConfig().getStyleSheetCache());
         if (encoding == null)
             encoding = decoder.getCharacterEncoding();
         decoder.setDefaultEncoding(encoding);
         decoder.attributesToStyles();
-        decoder.addStyleSheet(null, CSSNorm.stdStyleSheet(), DOMAnalyzer.Origin.AGENT);
-        decoder.addStyleSheet(null, CSSNorm.userStyleSheet(), DOMAnalyzer.Origin.AGENT);
+        decoder.addStyleSheet(CSSNorm.getStdStyleSheet());
+        decoder.addStyleSheet(CSSNorm.getUserStyleSheet());
         decoder.getStyleSheets();
     }
     
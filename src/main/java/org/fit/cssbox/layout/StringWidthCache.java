@@ -0,0 +1,187 @@
+/*
+ * StringWidthCache.java
+ * Copyright (c) 2005-2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 17. 10. 2026, 17:21:53 by agent
+ */
+package org.fit.cssbox.layout;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of text run widths that may be shared by all the visual context implementations.
+ * The cached widths are identified by a font key and the measured string. The font key is an arbitrary
+ * object provided by the visual context implementation that must uniquely identify the font and all the
+ * other settings that influence the resulting width (e.g. the font rendering context).
+ * The cache is thread-safe so that it may be shared by several engines using the same {@link BrowserConfig}.
+ *
+ * @author agent
+ */
+public class StringWidthCache
+{
+    /** Default maximal number of cached runs */
+    public static final int DEFAULT_SIZE = 8192;
+
+    /** Longer strings are never cached; they are rarely measured repeatedly */
+    public static final int MAX_CACHED_LENGTH = 128;
+
+    private final int maxSize;
+    private final Map<Key, Float> runs;
+
+    private long hits;
+    private long misses;
+
+
+    /**
+     * Creates a new cache with the default size.
+     */
+    public StringWidthCache()
+    {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a new cache with the given maximal number of entries.
+     * @param maxSize the maximal number of cached text runs
+     */
+    public StringWidthCache(int maxSize)
+    {
+        this.maxSize = maxSize;
+        this.runs = new LinkedHashMap<Key, Float>(Math.min(maxSize, 1024), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Float> eldest)
+            {
+                return size() > StringWidthCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Obtains the maximal number of entries.
+     * @return the cache size
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Obtains the width of the given string. When the width is not cached, it is computed
+     * using the given measure and stored in the cache.
+     * @param fontKey the key identifying the font
+     * @param text the text to be measured
+     * @param measure the measure used for computing the width when it is not cached
+     * @return the resulting width in pixels
+     */
+    public float getWidth(Object fontKey, String text, Measure measure)
+    {
+        if (text.length() > MAX_CACHED_LENGTH)
+            return measure.stringWidth(text);
+
+        final Key key = new Key(fontKey, text);
+        Float ret;
+        synchronized (this)
+        {
+            ret = runs.get(key);
+            if (ret != null)
+                hits++;
+            else
+                misses++;
+        }
+        if (ret == null)
+        {
+            ret = measure.stringWidth(text);
+            synchronized (this)
+            {
+                runs.put(key, ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Removes all the cached widths.
+     */
+    public synchronized void clear()
+    {
+        runs.clear();
+    }
+
+    /**
+     * Obtains the number of cache hits since the cache has been created.
+     * @return the number of hits
+     */
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    /**
+     * Obtains the number of cache misses since the cache has been created.
+     * @return the number of misses
+     */
+    public synchronized long getMissCount()
+    {
+        return misses;
+    }
+
+    //=========================================================================
+
+    /**
+     * An exact measurement method used when the width is not available in the cache.
+     */
+    public interface Measure
+    {
+        /**
+         * Computes the exact width of a string.
+         * @param text the string to be measured
+         * @return the width in pixels
+         */
+        public float stringWidth(String text);
+    }
+
+    private static final class Key
+    {
+        private final Object fontKey;
+        private final String text;
+        private final int hash;
+
+        public Key(Object fontKey, String text)
+        {
+            this.fontKey = fontKey;
+            this.text = text;
+            this.hash = 31 * fontKey.hashCode() + text.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            final Key other = (Key) obj;
+            return hash == other.hash && fontKey.equals(other.fontKey) && text.equals(other.text);
+        }
+    }
+
+}
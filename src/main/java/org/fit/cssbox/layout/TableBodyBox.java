@@ -19,8 +19,12 @@
  */
 package org.fit.cssbox.layout;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.w3c.dom.Element;
 
@@ -41,6 +45,9 @@ public class TableBodyBox extends BlockBox
     /** cell spacing */
     protected float spacing = 2;
     
+    /** The number of parallel layout tasks created per pool thread (for balancing the different cell sizes) */
+    private static final int TASKS_PER_THREAD = 4;
+    
     //====================================================================================
     
     /**
@@ -113,6 +120,7 @@ public class TableBodyBox extends BlockBox
     public void setSpacing(float spacing)
     {
     	this.spacing = spacing;
+    	invalidateIntrinsicWidths();
     }
     
     /**
@@ -137,18 +145,28 @@ public class TableBodyBox extends BlockBox
     @Override
     public float getMaximalWidth()
     {
-        float sum = spacing;
-        for (int i = 0; i < numCols; i++)
-            sum += getMaximalColumnWidth(i) + spacing;
+        float sum = getCachedMaximalWidth();
+        if (Float.isNaN(sum))
+        {
+            sum = spacing;
+            for (int i = 0; i < numCols; i++)
+                sum += getMaximalColumnWidth(i) + spacing;
+            setCachedMaximalWidth(sum);
+        }
         return sum;
     }
 
     @Override
     public float getMinimalWidth()
     {
-        float sum = spacing;
-        for (int i = 0; i < numCols; i++)
-            sum += getMinimalColumnWidth(i) + spacing;
+        float sum = getCachedMinimalWidth();
+        if (Float.isNaN(sum))
+        {
+            sum = spacing;
+            for (int i = 0; i < numCols; i++)
+                sum += getMinimalColumnWidth(i) + spacing;
+            setCachedMinimalWidth(sum);
+        }
         return sum;
     }
     
@@ -250,6 +268,51 @@ public class TableBodyBox extends BlockBox
         }
     }
     
+    /**
+     * Updates the stored column parametres for the fixed table layout. Only the cells of the first row
+     * of the table are used for determining the column width, the remaining cells are not analyzed.
+     * @param c the column index
+     * @param col the column to be updated
+     * @param firstrow {@code true} when the first row of this body is the first row of the whole table
+     */
+    public void updateFixedColumn(int c, TableColumn col, boolean firstrow)
+    {
+        if (firstrow && !col.wset && getRowCount() > 0)
+        {
+            TableCellBox cell = cells[c][0];
+            if (cell != null && cell.wset) //the width of a spanning cell is divided among the columns
+            {
+                col.wset = true;
+                if (cell.isRelative())
+                {
+                    col.setRelative(true);
+                    col.percent = cell.percent / cell.getColspan();
+                }
+                else //the full cell width including the padding and borders (CSS 2.1 17.5.2.1)
+                    col.abswidth = (cell.getContentWidth() + cell.padding.left + cell.padding.right
+                                    + cell.border.left + cell.border.right) / cell.getColspan();
+            }
+            else if (cell != null) //auto width, keep the minimal content width
+            {
+                final float min = cell.getMinimalWidth() / cell.getColspan();
+                if (min > col.getMinimalWidth())
+                    col.setMinimalWidth(min);
+            }
+        }
+        int r = 0;
+        while (r < getRowCount())
+        {
+            TableCellBox cell = cells[c][r];
+            if (cell != null)
+            {
+                cell.setOwnerColumn(col);
+                r += cell.getRowspan();
+            }
+            else
+                r++;
+        }
+    }
+    
     //====================================================================================
     
     @Override
@@ -285,6 +348,9 @@ public class TableBodyBox extends BlockBox
 
         float rowY[] = new float[getRowCount()]; //Y offests of the rows
         
+        //lay out the cells in advance when the parallel layout is enabled
+        final boolean prelaid = layoutCellsInParallel(wlimit, columns);
+        
         for (int r = 0; r < getRowCount(); r++)
         {
             TableRowBox row = getRow(r);
@@ -303,11 +369,14 @@ public class TableBodyBox extends BlockBox
                     float cw = columns.elementAt(c).getWidth();
                     for (int i = 1; i < cell.getColspan(); i++)
                         cw += spacing + columns.elementAt(c+i).getWidth();
-                    cell.setWidth(cw);
                     //compute the position
                     if (r == firstrow)
                     {
-                        cell.doLayout(wlimit, true, true);
+                        if (!prelaid)
+                        {
+                            cell.setWidth(cw);
+                            cell.doLayout(wlimit, true, true);
+                        }
                         cell.setPosition(x, 0);
                         //int ch = cell.getHeight() / cell.getRowspan();
                         if (cell.getRowspan() == 1)
@@ -318,6 +387,7 @@ public class TableBodyBox extends BlockBox
                     }
                     else if (r < lastrow)
                     {
+                        cell.setWidth(cw);
                         //int ch = cell.getHeight() / cell.getRowspan();
                         if (cell.getRowspan() == 1)
                         {
@@ -327,6 +397,7 @@ public class TableBodyBox extends BlockBox
                     }
                     else if (r == lastrow) 
                     {
+                        cell.setWidth(cw);
                         //use the remaining height of the cell
                         //int rh = y - cell.getContainingBlock().bounds.x;
                         float startY = rowY[cell.getRow()];
@@ -400,6 +471,121 @@ public class TableBodyBox extends BlockBox
         return true;
     }
     
+    /**
+     * Lays out the contents of all the cells in parallel using the configured layout pool. The cells
+     * are independent on each other once their widths are known. The cells are processed in bands
+     * of consecutive rows.
+     * @param wlimit the width limit used for the cell layout
+     * @param columns the table columns with the final widths
+     * @return {@code true} when the cells have been laid out, {@code false} when the parallel
+     * layout is not enabled or not applicable and the cells must be laid out sequentially
+     */
+    protected boolean layoutCellsInParallel(final float wlimit, Vector<TableColumn> columns)
+    {
+        final ForkJoinPool pool = getLayoutPool();
+        if (pool == null)
+            return false;
+        //set the cell widths and collect the cells in the row order
+        final List<TableCellBox> rowCells = new ArrayList<>();
+        for (int r = 0; r < getRowCount(); r++)
+        {
+            int c = 0;
+            while (c < getColumnCount())
+            {
+                TableCellBox cell = cells[c][r];
+                if (cell != null)
+                {
+                    if (cell.getRow() == r)
+                    {
+                        float cw = columns.elementAt(c).getWidth();
+                        for (int i = 1; i < cell.getColspan(); i++)
+                            cw += spacing + columns.elementAt(c+i).getWidth();
+                        cell.setWidth(cw);
+                        rowCells.add(cell);
+                    }
+                    c += cell.getColspan();
+                }
+                else
+                    c++;
+            }
+        }
+        if (rowCells.size() < 2)
+        {
+            return false;
+        }
+        else
+        {
+            final int band = Math.max(1, rowCells.size() / (pool.getParallelism() * TASKS_PER_THREAD));
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < rowCells.size(); i += band)
+            {
+                final List<TableCellBox> part = rowCells.subList(i, Math.min(i + band, rowCells.size()));
+                tasks.add(ForkJoinTask.adapt(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        for (TableCellBox cell : part)
+                            cell.doLayout(wlimit, true, true);
+                    }
+                }));
+            }
+            //the rows are shared by the tasks; propagate the invalidations after the layout
+            for (TableCellBox cell : rowCells)
+                cell.beginDetachedLayout();
+            try {
+                runLayoutTasks(pool, tasks);
+            } finally {
+                for (TableCellBox cell : rowCells)
+                    cell.endDetachedLayout();
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Computes the minimal and maximal widths of all the cells in parallel using the configured
+     * layout pool. The computed widths are cached in the cells for the current layout pass so that
+     * they are not computed again when the columns are updated.
+     */
+    public void computeCellWidthsInParallel()
+    {
+        final ForkJoinPool pool = getLayoutPool();
+        if (pool != null)
+        {
+            final List<TableCellBox> rowCells = new ArrayList<>();
+            for (int r = 0; r < getRowCount(); r++)
+            {
+                for (int c = 0; c < getColumnCount(); c++)
+                {
+                    TableCellBox cell = cells[c][r];
+                    if (cell != null && cell.getRow() == r && cell.getColumn() == c)
+                        rowCells.add(cell);
+                }
+            }
+            if (rowCells.size() > 1)
+            {
+                final int band = Math.max(1, rowCells.size() / (pool.getParallelism() * TASKS_PER_THREAD));
+                final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                for (int i = 0; i < rowCells.size(); i += band)
+                {
+                    final List<TableCellBox> part = rowCells.subList(i, Math.min(i + band, rowCells.size()));
+                    tasks.add(ForkJoinTask.adapt(new Runnable() {
+                        @Override
+                        public void run()
+                        {
+                            for (TableCellBox cell : part)
+                            {
+                                cell.getMinimalWidth();
+                                cell.getMaximalWidth();
+                            }
+                        }
+                    }));
+                }
+                runLayoutTasks(pool, tasks);
+            }
+        }
+    }
+    
     @Override
     protected void loadPadding(CSSDecoder dec, float contw)
     {
@@ -26,6 +26,7 @@ import org.fit.cssbox.css.HTMLNorm;
 import org.w3c.dom.Element;
 
 import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.CSSProperty;
 import cz.vutbr.web.css.Declaration;
 import cz.vutbr.web.css.TermLength;
 import cz.vutbr.web.css.TermLengthOrPercent;
@@ -59,6 +60,12 @@ public class TableBox extends BlockBox
     
     /** true if the column width have been already calculated */
     private boolean columnsCalculated = false;
+    
+    /** true if the fixed table layout has been specified by the style */
+    protected boolean fixedLayout = false;
+    
+    /** true if the size attributes have been already converted to the style declarations */
+    private boolean sizeAttributesLoaded = false;
 
     //====================================================================================
     
@@ -99,6 +106,37 @@ public class TableBox extends BlockBox
         return columnCount;
     }
     
+    /**
+     * Determine the total number of rows in the header, footer and all the bodies.
+     * @return the row count
+     */
+    public int getRowCount()
+    {
+        int ret = 0;
+        if (header != null)
+            ret += header.getRowCount();
+        if (footer != null)
+            ret += footer.getRowCount();
+        for (TableBodyBox body : bodies)
+            ret += body.getRowCount();
+        return ret;
+    }
+    
+    /**
+     * Checks whether the fixed table layout algorithm is used for computing the column widths.
+     * This happens when {@code table-layout: fixed} is specified for a table with an explicit width
+     * or when the table is large enough for forcing the fixed layout by the browser configuration.
+     * @return {@code true} for the fixed table layout, {@code false} for the automatic one
+     */
+    public boolean isFixedLayout()
+    {
+        if (fixedLayout && wset)
+            return true;
+        final Viewport vp = getViewport();
+        final int limit = (vp == null || vp.getConfig() == null) ? 0 : vp.getConfig().getFixedTableLayoutRows();
+        return limit > 0 && getRowCount() >= limit;
+    }
+    
 	@Override
 	public boolean hasFixedWidth()
 	{
@@ -162,8 +200,10 @@ public class TableBox extends BlockBox
     protected void loadSizes(boolean update)
     {
         //load the content width from the attribute (transform to declaration)
-        if (!update)
+        //this is done only once, the box may be initialized again for a relayout
+        if (!update && !sizeAttributesLoaded)
         {
+            sizeAttributesLoaded = true;
             //create an important 'width' and 'height' styles for this element
             String width = HTMLNorm.getAttribute(getElement(), "width");
             if (!width.equals(""))
@@ -310,7 +350,7 @@ public class TableBox extends BlockBox
     @Override
     protected float getMinimalDecorationWidth()
     {
-        if (wset)
+        if (wset || isFixedLayout())
             return super.getMinimalDecorationWidth();
         else
             return getMinimalWidth(); //all the content is considered for tables
@@ -320,11 +360,15 @@ public class TableBox extends BlockBox
     protected void drawChildren(DrawStage turn)
     {
         //Draw only the bodies, ignore the remaining children
-        if (header != null)
+        final Viewport vp = getViewport();
+        if (header != null && vp.isInDrawArea(header))
             header.draw(turn);
         for (TableBodyBox body : bodies)
-            body.draw(turn);
-        if (footer != null)
+        {
+            if (vp.isInDrawArea(body))
+                body.draw(turn);
+        }
+        if (footer != null && vp.isInDrawArea(footer))
             footer.draw(turn);
     }
     
@@ -359,6 +403,7 @@ public class TableBox extends BlockBox
      */
     private void updateColumns(TableBodyBox body)
     {
+        body.computeCellWidthsInParallel(); //when enabled
         for (int i = 0; i < columns.size(); i++)
             if (i < body.getColumnCount())
                 body.updateColumn(i, columns.elementAt(i));
@@ -369,6 +414,12 @@ public class TableBox extends BlockBox
      */
     private void calculateColumns()
     {
+        if (isFixedLayout())
+        {
+            calculateFixedColumns();
+            return;
+        }
+        
         float wlimit = getAvailableContentWidth();
         //System.out.println("wset="+wset);
         //System.out.println("wlimit="+wlimit);
@@ -643,6 +694,80 @@ public class TableBox extends BlockBox
         columnsCalculated = true;
     }
     
+    /**
+     * Calculates the column widths using the fixed table layout algorithm (CSS 2.1, 17.5.2.1).
+     * The widths are obtained from the columns and the cells in the first row only, the remaining
+     * width is distributed equally among the columns with no width specified. These columns are never
+     * narrower than the minimal width of their first-row cells.
+     */
+    private void calculateFixedColumns()
+    {
+        //create the columns that haven't been specified explicitely
+        determineColumnCount();
+        while (columns.size() < columnCount)
+            columns.add(new TableColumn(TableColumn.createAnonymousColumn(getParent().getElement().getOwnerDocument()), ctx));
+        
+        //load the column widths from the first row
+        boolean firstrow = true;
+        if (header != null)
+            firstrow = updateFixedColumns(header, firstrow);
+        for (Iterator<TableBodyBox> it = bodies.iterator(); it.hasNext(); )
+            firstrow = updateFixedColumns(it.next(), firstrow);
+        if (footer != null)
+            firstrow = updateFixedColumns(footer, firstrow);
+        
+        //the total width is given by the table width
+        float totalw = (wset ? content.width : getAvailableContentWidth()) - (columns.size() + 1) * spacing;
+        if (totalw < 0) totalw = 0;
+        
+        //set the columns with the specified width
+        float remain = totalw;
+        int autocols = 0;
+        for (TableColumn col : columns)
+        {
+            if (col.wset)
+            {
+                float neww = col.wrelative ? col.percent * totalw / 100 : col.abswidth;
+                col.setColumnWidth(neww);
+                remain -= neww;
+            }
+            else
+                autocols++;
+        }
+        
+        //distribute the remaining width; the auto columns keep at least their minimal width
+        //and the table overflows when the fixed widths exceed the table width
+        if (autocols > 0)
+        {
+            float neww = Math.max(remain, 0) / autocols;
+            for (TableColumn col : columns)
+                if (!col.wset)
+                    col.setColumnWidth(Math.max(neww, col.getMinimalWidth()));
+        }
+        else if (remain > 0 && columns.size() > 0)
+        {
+            float addw = remain / columns.size();
+            for (TableColumn col : columns)
+                col.setColumnWidth(col.getWidth() + addw);
+        }
+        
+        columnsCalculated = true;
+    }
+    
+    /**
+     * Updates the stored column parametres for the fixed table layout.
+     * @param body the body to be used
+     * @param firstrow {@code true} when the body may contain the first row of the table
+     * @return {@code true} when the first row of the table has not been found yet
+     */
+    private boolean updateFixedColumns(TableBodyBox body, boolean firstrow)
+    {
+        for (int i = 0; i < columns.size(); i++)
+            if (i < body.getColumnCount())
+                body.updateFixedColumn(i, columns.elementAt(i), firstrow);
+        return firstrow && body.getRowCount() == 0;
+    }
+    
     @Override
 	protected void loadBlockStyle()
 	{
@@ -669,6 +794,9 @@ public class TableBox extends BlockBox
   		}
   		else
   			spacing = dec.getLength(getLengthValue("border-spacing"), false, DEFAULT_SPACING, 0, 0);
+  		//table layout algorithm
+  		CSSProperty.TableLayout layout = style.getProperty("table-layout");
+  		fixedLayout = (layout == CSSProperty.TableLayout.FIXED);
     }
     
     /**
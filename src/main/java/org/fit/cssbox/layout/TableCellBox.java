@@ -252,7 +252,7 @@ public class TableCellBox extends BlockBox
     @Override
     public float getMinimalWidth()
     {
-        float ret = getMinimalContentWidth();
+        float ret = getMinimalContentWidthCached();
         if (!wrelative && hasFixedWidth() && content.width > ret)
             ret = content.width;
         ret += margin.left + padding.left + border.left +
@@ -263,7 +263,7 @@ public class TableCellBox extends BlockBox
     @Override
     public float getMaximalWidth()
     {
-        float ret = getMaximalContentWidth();
+        float ret = getMaximalContentWidthCached();
         /*if (!wrelative && hasFixedWidth())
             ret = content.width;*/
         //increase by margin, padding, border
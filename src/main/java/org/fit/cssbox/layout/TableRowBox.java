@@ -282,6 +282,7 @@ public class TableRowBox extends BlockBox
             }
         }
         nested.removeAll(toremove);
+        invalidateIntrinsicWidths();
         
         if (anoncell != null)
         {
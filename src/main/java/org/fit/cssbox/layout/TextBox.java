@@ -20,7 +20,9 @@
 
 package org.fit.cssbox.layout;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 import org.w3c.dom.Text;
@@ -97,6 +99,13 @@ public class TextBox extends Box implements Inline
     /** Word spacing */
     private Float wordSpacing;
     
+    /** Line break opportunities in the text string: 0 followed by the start indices of all the space sequences.
+     * Computed lazily and shared with the boxes created by splitting this box. */
+    private int[] breakIndex;
+    
+    /** The widths of the text string from its beginning to the corresponding positions in {@link #breakIndex} */
+    private float[] breakOffsets;
+    
     
     //===================================================================
     
@@ -139,6 +148,8 @@ public class TextBox extends Box implements Inline
         containsLineBreak = src.containsLineBreak;
         transform = src.transform;
         wordSpacing = src.wordSpacing;
+        breakIndex = src.breakIndex;
+        breakOffsets = src.breakOffsets;
     }
     
     /** 
@@ -172,6 +183,7 @@ public class TextBox extends Box implements Inline
             transform = getParent().getStyle().getProperty("text-transform");
             if (transform == null)
                 transform = TextTransform.NONE;
+            final Float oldSpacing = wordSpacing;
             CSSProperty.WordSpacing wspacing = getParent().getStyle().getProperty("word-spacing");
             if (wspacing != null && wspacing != WordSpacing.NORMAL)
             {
@@ -181,6 +193,8 @@ public class TextBox extends Box implements Inline
             }
             else
                 wordSpacing = null;
+            if (!Objects.equals(oldSpacing, wordSpacing))
+                invalidateBreakIndex(); //the widths have changed
             //reset the whitespace processing according to the parent settings
             CSSProperty.WhiteSpace ws = getParent().getWhiteSpace();
             if (ws != ElementBox.WHITESPACE_NORMAL || transform != TextTransform.NONE)
@@ -243,6 +257,8 @@ public class TextBox extends Box implements Inline
         computeLineLengths();
         minwidth = computeMinimalWidth();
         maxwidth = computeMaximalWidth();
+        if (getParent() != null)
+            getParent().invalidateIntrinsicWidths();
     }
     
     /**
@@ -255,6 +271,7 @@ public class TextBox extends Box implements Inline
         textStart = 0;
         textEnd = text.length();
         isempty = (textEnd == 0);
+        invalidateBreakIndex();
     }
     
     /**
@@ -346,6 +363,7 @@ public class TextBox extends Box implements Inline
             text = text.substring(0, last);
             textStart = 0;
             textEnd = last;
+            invalidateBreakIndex();
         }
     }
     
@@ -577,6 +595,8 @@ public class TextBox extends Box implements Inline
             computeLineLengths();
             minwidth = computeMinimalWidth();
             maxwidth = computeMaximalWidth();
+            if (getParent() != null)
+                getParent().invalidateIntrinsicWidths();
         }
     }
     
@@ -646,42 +666,98 @@ public class TextBox extends Box implements Inline
                     empty = true; //collapsed to an empty box
                 }
             }
-            //try to place the text
-            do
+            h = ctx.getFontHeight();
+            if (empty || !splitws)
             {
+                //no split possible, just try to place the whole text
                 w = stringWidth(text.substring(textStart, end));
-                h = ctx.getFontHeight();
-                if (w > wlimit) //exceeded - try to split if allowed
+                if (w > wlimit)
                 {
                     if (empty) //empty or just spaces - don't place at all
                     {
                         w = 0; h = 0;
                         split = false;
-                        break;
                     }
-                    int wordend = text.substring(0, end).lastIndexOf(' '); //find previous word
-                    while (wordend > 0 && text.charAt(wordend-1) == ' ') wordend--; //skip trailing spaces
-                    if (wordend <= textStart || !splitws) //no previous word, cannot split or splitting not allowed
+                    else if (!force) //splitting not allowed
+                    {
+                        end = textEnd; //we will try with the whole rest next time
+                        split = false; 
+                        allow = false; //split before the linebreak
+                        fail = true;
+                    }
+                    else
+                        split = true;
+                }
+            }
+            else
+            {
+                //the candidate ends are the break opportunities between textStart and end, followed by end itself
+                if (breakIndex == null)
+                    computeBreakIndex();
+                final int first = firstBreakAfter(textStart);
+                final int count = Math.max(firstBreakAfter(end - 1) - first, 0); //number of breaks before end
+                //estimate the last candidate that fits using the pre-computed offsets
+                final float base = textOffset(textStart);
+                int lo = 0, hi = count; //the result is in [lo-1, hi]
+                while (lo <= hi)
+                {
+                    final int mid = (lo + hi) >>> 1;
+                    final int pos = (mid < count) ? breakIndex[first + mid] : end;
+                    final float est = (pos == end) ? textOffset(end) - base : breakOffsets[first + mid] - base;
+                    if (est <= wlimit)
+                        lo = mid + 1;
+                    else
+                        hi = mid - 1;
+                }
+                //verify the estimate by exact measuring and correct it when necessary
+                int cand = Math.max(hi, 0);
+                int cend = (cand < count) ? breakIndex[first + cand] : end;
+                w = stringWidth(text.substring(textStart, cend));
+                if (w > wlimit)
+                {
+                    while (cand > 0 && w > wlimit)
+                    {
+                        cand--;
+                        cend = breakIndex[first + cand];
+                        w = stringWidth(text.substring(textStart, cend));
+                    }
+                }
+                else
+                {
+                    while (cand < count)
+                    {
+                        final int nend = (cand + 1 < count) ? breakIndex[first + cand + 1] : end;
+                        final float nw = stringWidth(text.substring(textStart, nend));
+                        if (nw > wlimit)
+                            break;
+                        cand++;
+                        cend = nend;
+                        w = nw;
+                    }
+                }
+                
+                if (w <= wlimit) //a fitting end found
+                {
+                    if (cend < end)
+                        split = true;
+                    end = cend;
+                }
+                else //no previous word, cannot split
+                {
+                    if (!force) //everything failed
                     {
-                        if (!force) //everything failed
-                        {
-                        	//System.out.println("Here for " + this);
-                            end = textEnd; //we will try with the whole rest next time
-                            split = false; 
-                            allow = false; //split before the linebreak
-                            fail = true;
-                        }
-                        else
-                            split = true;
-                        break;
+                        end = textEnd; //we will try with the whole rest next time
+                        split = false; 
+                        allow = false; //split before the linebreak
+                        fail = true;
                     }
                     else
                     {
-                        end = wordend;
+                        end = cend;
                         split = true;
                     }
                 }
-            } while (end > textStart && w > wlimit);
+            }
         }
         textEnd = end;
         bounds.setSize(w, h);
@@ -983,6 +1059,68 @@ public class TextBox extends Box implements Inline
         lastLineLength = w;
     }
 
+    /**
+     * Computes the line break opportunity index and the corresponding text offsets for the whole text string.
+     * The offsets are computed by measuring the individual words so that the whole operation is linear
+     * in the text length.
+     */
+    private void computeBreakIndex()
+    {
+        int cnt = 1;
+        for (int i = 1; i < text.length(); i++)
+            if (text.charAt(i) == ' ' && text.charAt(i - 1) != ' ')
+                cnt++;
+        final int[] index = new int[cnt];
+        final float[] offsets = new float[cnt];
+        int k = 1;
+        for (int i = 1; i < text.length(); i++)
+        {
+            if (text.charAt(i) == ' ' && text.charAt(i - 1) != ' ')
+            {
+                index[k] = i;
+                offsets[k] = offsets[k - 1] + stringWidth(text.substring(index[k - 1], i));
+                k++;
+            }
+        }
+        breakIndex = index;
+        breakOffsets = offsets;
+    }
+    
+    /**
+     * Discards the line break index after the text or its measurement has changed.
+     */
+    private void invalidateBreakIndex()
+    {
+        breakIndex = null;
+        breakOffsets = null;
+    }
+    
+    /**
+     * Finds the first break opportunity that follows the given position in the text.
+     * @param pos the text position
+     * @return the index of the first break opportunity in {@link #breakIndex} that is greater than {@code pos}
+     */
+    private int firstBreakAfter(int pos)
+    {
+        int i = Arrays.binarySearch(breakIndex, pos);
+        return (i >= 0) ? i + 1 : -(i + 1);
+    }
+    
+    /**
+     * Estimates the width of the text string from its beginning to the given position using
+     * the pre-computed break offsets.
+     * @param pos the text position
+     * @return the estimated width in pixels
+     */
+    private float textOffset(int pos)
+    {
+        final int k = firstBreakAfter(pos) - 1; //the last break not greater than pos
+        if (breakIndex[k] == pos)
+            return breakOffsets[k];
+        else
+            return breakOffsets[k] + stringWidth(text.substring(breakIndex[k], pos));
+    }
+    
     /**
      * Computes the final width of a string while considering word-spacing
      * @param fm the font metrics used for calculation
@@ -18,6 +18,7 @@
 
 package org.fit.cssbox.layout;
 
+import java.util.List;
 import java.util.Vector;
 
 import org.fit.cssbox.render.BoxRenderer;
@@ -51,12 +52,17 @@ public class Viewport extends BlockBox
     protected BrowserConfig config;
 	private BoxFactory factory;
 	private BoxRenderer renderer;
+	private Rectangle drawArea; //the area being drawn or null for the whole viewport
+	private final ThreadLocal<DrawState> threadDrawState = new ThreadLocal<>(); //renderers used by concurrent drawing
+	private volatile BoxIndex boxIndex; //spatial index of the boxes, created on demand
 	private Element root; //the DOM root
 	private ElementBox rootBox; //the box that corresponds to the root node. It should be one of the child boxes.
     private boolean rootOverflowVisible = true; //has the root box originally had overflow:visible?
     private float maxx; //maximal X position of all the content
     private float maxy; //maximal Y position of all the content
+    private int layoutPass; //the number of the current layout pass used for identifying the cached values
     private boolean recomputeAbs; //indicates that the absolute positions need to be recomputed
+    private boolean viewportUnitsUsed; //some lengths have been specified in the viewport-relative units
     
     /**
      * Creates a new Viewport with the given initial size. The actual size may be increased during the layout. 
@@ -105,6 +111,37 @@ public class Viewport extends BlockBox
         this.content = visibleRect.getSize();
     }
 
+    /**
+     * Sets the preferred (minimal) size of the whole canvas. This is used for a new layout
+     * of an existing box tree with a different canvas size.
+     * @param width the preferred width
+     * @param height the preferred height
+     */
+    public void setCanvasSize(float width, float height)
+    {
+        this.width = width;
+        this.height = height;
+    }
+    
+    /**
+     * Checks whether some lengths used in the box tree have been specified in the viewport-relative
+     * units (vw, vh, vmin, vmax). In that case, the computed styles depend on the viewport size.
+     * @return {@code true} when the viewport-relative units have been used
+     */
+    public boolean getViewportUnitsUsed()
+    {
+        return viewportUnitsUsed;
+    }
+    
+    /**
+     * Records whether some lengths have been specified in the viewport-relative units.
+     * @param viewportUnitsUsed {@code true} when the viewport-relative units have been used
+     */
+    public void setViewportUnitsUsed(boolean viewportUnitsUsed)
+    {
+        this.viewportUnitsUsed = viewportUnitsUsed;
+    }
+    
     /**
      * Obtains the width of the whole canvas that represents the whole rendered page.
      * @return The canvas size.
@@ -352,11 +389,14 @@ public class Viewport extends BlockBox
     @Override
     public boolean doLayout(float availw, boolean force, boolean linestart)
     {
+        //start a new layout pass, the cached intrinsic widths are not valid anymore
+        layoutPass++;
+        
         //remove previously splitted children from possible previous layout
         clearSplitted();
 
         //viewport has a siplified width computation algorithm
-        float min = getMinimalContentWidth();
+        float min = getMinimalContentWidthCached();
         float pref = Math.max(min, width);
         setContentWidth(pref);
         updateChildSizes();
@@ -396,6 +436,7 @@ public class Viewport extends BlockBox
             scontext.clear();
 	    
 	    absolutePositionsChildren();
+	    boxIndex = null; //the positions have changed
     }
 	
 	/**
@@ -423,9 +464,52 @@ public class Viewport extends BlockBox
      * @param renderer The renderer to be used for drawing.
      */
     public void draw(BoxRenderer renderer)
+    {
+        draw(renderer, null);
+    }
+	
+    /**
+     * Sets the current renderer and draws the parts of the subtree that may be visible in the given area.
+     * The subtrees that do not affect the area at all (according to the box index) are skipped.
+     * @param renderer The renderer to be used for drawing.
+     * @param area The area to be drawn or {@code null} for drawing the whole viewport.
+     */
+    public void draw(BoxRenderer renderer, Rectangle area)
     {
         this.renderer = renderer;
-        drawStackingContext(false);
+        this.drawArea = area;
+        try {
+            drawStackingContext(false);
+        } finally {
+            this.drawArea = null;
+        }
+    }
+	
+    /**
+     * Draws the whole subtree using the given renderer in the current thread. Unlike {@link #draw(BoxRenderer)},
+     * the renderer is only used by the current thread so that several threads may draw the same viewport
+     * concurrently using different renderers (e.g. each of them painting a different part of the canvas).
+     * @param renderer The renderer to be used for drawing.
+     */
+    public void drawConcurrently(BoxRenderer renderer)
+    {
+        drawConcurrently(renderer, null);
+    }
+	
+    /**
+     * Draws the parts of the subtree that may be visible in the given area using the given renderer
+     * in the current thread. See {@link #drawConcurrently(BoxRenderer)} and {@link #draw(BoxRenderer, Rectangle)}.
+     * @param renderer The renderer to be used for drawing.
+     * @param area The area to be drawn or {@code null} for drawing the whole viewport.
+     */
+    public void drawConcurrently(BoxRenderer renderer, Rectangle area)
+    {
+        threadDrawState.set(new DrawState(renderer, area));
+        try {
+            drawStackingContext(false);
+        } finally {
+            threadDrawState.remove();
+        }
     }
 	
     /**
@@ -434,7 +518,101 @@ public class Viewport extends BlockBox
      */
     public BoxRenderer getRenderer()
     {
-        return renderer;
+        final DrawState state = threadDrawState.get();
+        return (state != null) ? state.renderer : renderer;
+    }
+    
+    /**
+     * Obtains the area that is currently being drawn.
+     * @return the drawn area or {@code null} when the whole viewport is being drawn
+     */
+    public Rectangle getDrawArea()
+    {
+        final DrawState state = threadDrawState.get();
+        return (state != null) ? state.area : drawArea;
+    }
+    
+    /**
+     * Checks whether drawing the given box subtree may affect the area that is currently being drawn.
+     * @param box the box to be checked
+     * @return {@code true} when the box should be drawn
+     */
+    public boolean isInDrawArea(Box box)
+    {
+        final Rectangle area = getDrawArea();
+        return area == null || getBoxIndex().mayPaintIn(box, area);
+    }
+    
+    /**
+     * Obtains the child boxes of the given box whose subtrees may affect the area that is currently
+     * being drawn. The children are found using the box index.
+     * @param parent the parent box
+     * @param first the index of the first child box to be considered
+     * @param last the index of the last child box to be considered (not included)
+     * @return the list of the child boxes in the child order
+     */
+    public List<Box> getChildrenInDrawArea(ElementBox parent, int first, int last)
+    {
+        final Rectangle area = getDrawArea();
+        if (area == null)
+            return parent.nested.subList(first, last);
+        else
+            return getBoxIndex().childrenIn(parent, first, last, area);
+    }
+    
+    /**
+     * Obtains the number of the current layout pass. The number changes whenever a new layout
+     * of the viewport is started; the values cached during the layout are only valid during the same pass.
+     * @return the layout pass number
+     */
+    @Override
+    public int getLayoutPass()
+    {
+        return layoutPass;
+    }
+    
+    /**
+     * Obtains the spatial index of the boxes of this viewport. The index is created on demand
+     * and it is discarded when the absolute positions are recomputed.
+     * @return the box index
+     */
+    public BoxIndex getBoxIndex()
+    {
+        BoxIndex ret = boxIndex;
+        if (ret == null)
+        {
+            synchronized (this)
+            {
+                ret = boxIndex;
+                if (ret == null)
+                {
+                    ret = new BoxIndex(this);
+                    boxIndex = ret;
+                }
+            }
+        }
+        return ret;
+    }
+    
+    /**
+     * Finds all the boxes whose absolute bounds contain the given point.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the list of boxes; the ancestors precede their descendants
+     */
+    public List<Box> boxesAt(float x, float y)
+    {
+        return getBoxIndex().boxesAt(x, y);
+    }
+    
+    /**
+     * Finds all the boxes whose absolute bounds intersect the given rectangle.
+     * @param rect the rectangle
+     * @return the list of boxes; the ancestors precede their descendants
+     */
+    public List<Box> boxesIn(Rectangle rect)
+    {
+        return getBoxIndex().boxesIn(rect);
     }
     
 	/**
@@ -606,5 +784,22 @@ public class Viewport extends BlockBox
         }
     }
 
+    //===================================================================================
+    
+    /**
+     * The renderer and the drawn area used by a thread.
+     */
+    private static class DrawState
+    {
+        public final BoxRenderer renderer;
+        public final Rectangle area;
+        
+        public DrawState(BoxRenderer renderer, Rectangle area)
+        {
+            this.renderer = renderer;
+            this.area = area;
+        }
+    }
+    
 }
 
@@ -22,8 +22,12 @@ package org.fit.cssbox.layout;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import org.fit.cssbox.css.CSSUnits;
 import org.fit.cssbox.css.FontSpec;
@@ -70,11 +74,11 @@ public abstract class VisualContext
     private List<CSSProperty.TextDecoration> textDecoration;
     private float letterSpacing; //additional letter spacing in pt
     private float rem; // 1rem length in points 
+    private boolean shared; //the context is shared by several boxes, it must not be modified
+    private Map<StateKey, VisualContext> sharedChildren; //shared child contexts, see intern()
     
     public Color color; //current text color
 
-    private PxEvaluator pxEval; //expression evaluator for obtaining pixel values of expressions
-    private PtEvaluator ptEval; //expression evaluator for obtaining points values of expressions
     private DegEvaluator degEval; //expression evaluator for obtaining degree values of expressions
     private RadEvaluator radEval; //expression evaluator for obtaining radian values of expressions
 
@@ -111,6 +115,97 @@ public abstract class VisualContext
    
     abstract public VisualContext create();
     
+    /**
+     * Creates a modifiable copy of this context with the same parent context. This is used
+     * for modifying the shared contexts (copy-on-write).
+     * @return the new context
+     */
+    public VisualContext copy()
+    {
+        final VisualContext ret = (parent == null || parent == this) ? create() : parent.create();
+        ret.copyVisualContext(this);
+        ret.parent = parent;
+        return ret;
+    }
+    
+    /**
+     * Checks whether the context is shared by several boxes. The shared contexts must not be modified;
+     * a {@link #copy()} must be used instead.
+     * @return {@code true} when the context is shared
+     */
+    public boolean isShared()
+    {
+        return shared;
+    }
+    
+    /**
+     * Obtains a shared context that is equal to this context. The child contexts of the same parent
+     * that have the same font, color, decoration and spacing are represented by a single shared
+     * instance so that the boxes with the same computed style do not keep their own copies.
+     * The returned context must not be modified anymore.
+     * @return the shared instance (this context when no equal context has been shared before)
+     */
+    public VisualContext intern()
+    {
+        if (shared || parent == null || parent == this)
+            return this; //already shared or a root context that is never shared
+        else
+            return parent.internChild(this);
+    }
+    
+    private synchronized VisualContext internChild(VisualContext child)
+    {
+        if (sharedChildren == null)
+            sharedChildren = new HashMap<>();
+        final StateKey key = new StateKey(child);
+        final VisualContext ret = sharedChildren.get(key);
+        if (ret != null)
+            return ret;
+        child.shared = true;
+        sharedChildren.put(key, child);
+        return child;
+    }
+    
+    /**
+     * Checks whether the other context represents the same state as this context so that a single instance
+     * may be used instead of both of them. The implementations with additional state must override this
+     * method together with {@link #stateHashCode()}.
+     * @param other the context to compare
+     * @return {@code true} when the contexts are equal
+     */
+    protected boolean hasSameState(VisualContext other)
+    {
+        return getClass() == other.getClass()
+                && parent == other.parent
+                && rootContext == other.rootContext
+                && viewport == other.viewport
+                && config == other.config
+                && fontTable == other.fontTable
+                && fontSize == other.fontSize
+                && fontWeight == other.fontWeight
+                && fontStyle == other.fontStyle
+                && fontVariant == other.fontVariant
+                && letterSpacing == other.letterSpacing
+                && rem == other.rem
+                && textDecoration.equals(other.textDecoration)
+                && Objects.equals(color, other.color);
+    }
+    
+    /**
+     * Computes a hash code of the context state that is consistent with {@link #hasSameState(VisualContext)}.
+     * @return the hash code
+     */
+    protected int stateHashCode()
+    {
+        int h = Float.floatToIntBits(fontSize);
+        h = 31 * h + Objects.hashCode(fontWeight);
+        h = 31 * h + Objects.hashCode(fontStyle);
+        h = 31 * h + Float.floatToIntBits(letterSpacing);
+        h = 31 * h + textDecoration.hashCode();
+        h = 31 * h + Objects.hashCode(color);
+        return h;
+    }
+    
     //=========================================================================
     
     public VisualContext getParentContext()
@@ -269,7 +364,9 @@ public abstract class VisualContext
     abstract public String getFontFamily();
     
     /**
-     * Computes the pixel width of the given string in the visual context.
+     * Computes the pixel width of the given string in the visual context. The implementations
+     * may use the {@link StringWidthCache} obtained from the configuration unless
+     * the exact measurement is required by {@link BrowserConfig#getExactTextMeasurement()}.
      * @param text The text sting
      * @return the resulting widtg in pixels
      */
@@ -284,6 +381,8 @@ public abstract class VisualContext
      */
     public void update(NodeData style)
     {
+        if (shared)
+            throw new IllegalStateException("A shared visual context cannot be modified");
         // font style and weight
         CSSProperty.FontWeight weight = style.getProperty("font-weight");
         if (weight != null) fontWeight = weight;
@@ -462,13 +561,13 @@ public abstract class VisualContext
                 case ch:
                     return getCh() * nval;
                 case vw:
-                    return CSSUnits.points(viewport.getVisibleRect().getWidth()) * nval / 100.0f;
+                    return CSSUnits.points(getViewportUnitRect().getWidth()) * nval / 100.0f;
                 case vh:
-                    return CSSUnits.points(viewport.getVisibleRect().getWidth()) * nval / 100.0f;
+                    return CSSUnits.points(getViewportUnitRect().getWidth()) * nval / 100.0f;
                 case vmin:
-                    return CSSUnits.points(Math.min(viewport.getVisibleRect().getWidth(), viewport.getVisibleRect().getHeight())) * nval / 100.0f;
+                    return CSSUnits.points(Math.min(getViewportUnitRect().getWidth(), getViewportUnitRect().getHeight())) * nval / 100.0f;
                 case vmax:
-                    return CSSUnits.points(Math.max(viewport.getVisibleRect().getWidth(), viewport.getVisibleRect().getHeight())) * nval / 100.0f;
+                    return CSSUnits.points(Math.max(getViewportUnitRect().getWidth(), getViewportUnitRect().getHeight())) * nval / 100.0f;
                 default:
                     return 0;
             }
@@ -533,13 +632,13 @@ public abstract class VisualContext
                 case ch:
                     return CSSUnits.pixels(getCh() * nval);
                 case vw:
-                    return viewport.getVisibleRect().getWidth() * nval / 100.0f;
+                    return getViewportUnitRect().getWidth() * nval / 100.0f;
                 case vh:
-                    return viewport.getVisibleRect().getHeight() * nval / 100.0f;
+                    return getViewportUnitRect().getHeight() * nval / 100.0f;
                 case vmin:
-                    return Math.min(viewport.getVisibleRect().getWidth(), viewport.getVisibleRect().getHeight()) * nval / 100.0f;
+                    return Math.min(getViewportUnitRect().getWidth(), getViewportUnitRect().getHeight()) * nval / 100.0f;
                 case vmax:
-                    return Math.max(viewport.getVisibleRect().getWidth(), viewport.getVisibleRect().getHeight()) * nval / 100.0f;
+                    return Math.max(getViewportUnitRect().getWidth(), getViewportUnitRect().getHeight()) * nval / 100.0f;
                 default:
                     return 0;
             }
@@ -624,6 +723,17 @@ public abstract class VisualContext
         }
     }
     
+    /**
+     * Obtains the visible rectangle of the viewport used for evaluating the viewport-relative units
+     * and records that the style of the document depends on the viewport size.
+     * @return the visible rectangle
+     */
+    private Rectangle getViewportUnitRect()
+    {
+        viewport.setViewportUnitsUsed(true);
+        return viewport.getVisibleRect();
+    }
+    
     //===================================================================================
     
     /** 
@@ -763,18 +873,17 @@ public abstract class VisualContext
     
     //============================================================================================================================
     
+    //the px and pt evaluators keep the percentage base; a new instance is used for each evaluation
+    //since the (shared) contexts may be used by concurrent layouts
+    
     private PxEvaluator getPxEval()
     {
-        if (pxEval == null)
-            pxEval = new PxEvaluator(this);
-        return pxEval;
+        return new PxEvaluator(this);
     }
     
     private PtEvaluator getPtEval()
     {
-        if (ptEval == null)
-            ptEval = new PtEvaluator(this);
-        return ptEval;
+        return new PtEvaluator(this);
     }
     
     private DegEvaluator getDegEval()
@@ -793,6 +902,38 @@ public abstract class VisualContext
     
     //============================================================================================================================
     
+    /**
+     * A key used for finding the shared contexts with the same state.
+     */
+    private static final class StateKey
+    {
+        private final VisualContext ctx;
+        private final int hash;
+        
+        public StateKey(VisualContext ctx)
+        {
+            this.ctx = ctx;
+            this.hash = ctx.stateHashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) return true;
+            if (!(obj instanceof StateKey)) return false;
+            final StateKey other = (StateKey) obj;
+            return hash == other.hash && ctx.hasSameState(other.ctx);
+        }
+    }
+    
+    //============================================================================================================================
+    
     /**
      * A base of all the evaluators that use the VisualContext for evaluating the calc() expressions.
      *
@@ -891,4 +1032,22 @@ public abstract class VisualContext
      */
     public abstract ImageLoader getImageLoader();
     
+    /**
+     * Loads an image using the image loader of this context. When the image has been already
+     * prefetched by the {@link ImagePrefetcher} of the current box factory, the prefetched
+     * image is used instead.
+     * @param url the image URL
+     * @return the resulting image or {@code null} when the image cannot be loaded
+     */
+    public ContentImage loadImage(URL url)
+    {
+        if (url != null && viewport != null && viewport.getFactory() != null)
+        {
+            final ImagePrefetcher prefetcher = viewport.getFactory().getImagePrefetcher();
+            if (prefetcher != null && prefetcher.isPrefetched(url))
+                return prefetcher.getImage(url);
+        }
+        return getImageLoader().loadImage(url);
+    }
+    
 }
@@ -25,6 +25,7 @@ import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -32,10 +33,13 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.fit.cssbox.io.DefaultDOMSource;
@@ -48,8 +52,8 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 /**
- * A batch of tests in a test folder. The tests are executed in separate threads with
- * a timeout.
+ * A batch of tests in a test folder. The tests are executed in parallel in separate threads
+ * with a per-test timeout.
  * 
  * @author burgetr
  */
@@ -72,6 +76,10 @@ public class TestBatch
     private Map<String, Float> results;
     private int totalCount;
     private int completedCount;
+    private int timeoutCount;
+    private int taskTimeout;
+    private long startTime;
+    private long elapsedTime;
     
     /**
      * Creates a test batch from a test folder. The folder format must correspond to the
@@ -97,6 +105,7 @@ public class TestBatch
         this.testURL = testURL;
         this.tests = new LinkedList<SourceEntry>();
         this.results = new LinkedHashMap<String, Float>();
+        this.taskTimeout = TASK_TIMEOUT;
         parseToc();
     }
     
@@ -227,7 +236,10 @@ public class TestBatch
     
     /**
      * Runs all the test from the TOC. The tests are executed as separate tasks
-     * passed to the executor service.
+     * passed to the executor service. All the tests are submitted at once and executed
+     * in parallel; each test is cancelled when it runs longer than the task timeout
+     * (see {@link #setTaskTimeout(int)}). The failed and cancelled tests obtain the
+     * result 1.0.
      * @param selected the list of selected test to be used or {@code null} to use all the
      * tests that are not blacklisted
      */
@@ -239,60 +251,102 @@ public class TestBatch
             runTestsInSequence(selected);
             return;
         }
-        //ExecutorService exec = Executors.newSingleThreadExecutor();
-        ExecutorService exec = Executors.newFixedThreadPool(threadsUsed);
+        ExecutorService exec = Executors.newFixedThreadPool(threadsUsed, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "cssbox-test");
+                t.setDaemon(true); //do not block the exit when a cancelled test does not stop
+                return t;
+            }
+        });
+        CompletionService<Float> completion = new ExecutorCompletionService<Float>(exec);
         List<Callable<Float>> list = getTestList(selected);
-        List<Future<Float>> futures = new ArrayList<Future<Float>>(list.size());
+        List<TestTask> tasks = new ArrayList<TestTask>(list.size());
+        Map<Future<Float>, TestTask> running = new HashMap<Future<Float>, TestTask>();
         totalCount = list.size();
         completedCount = 0;
-        //exec all tests with time limit; collect the futures
-        for (int i = 0; i < list.size(); i++)
+        timeoutCount = 0;
+        startTime = System.currentTimeMillis();
+        //submit all the tests
+        for (Callable<Float> test : list)
         {
-            try
-            {
-                List<Future<Float>> fl = exec.invokeAll(list.subList(i, i + 1), TASK_TIMEOUT, TimeUnit.SECONDS);
-                futures.add(fl.get(0));
-            } catch (InterruptedException e) {
-                log.error("Test " + i + " interrupted: " + e.getMessage());
-                futures.add(null);
-            }
+            ((ReferenceTestCase) test).setBatch(this);
+            TestTask task = new TestTask((ReferenceTestCase) test);
+            tasks.add(task);
+            running.put(completion.submit(task), task);
         }
-        //get the results from the futures
-        for (int i = 0; i < futures.size(); i++)
+        //collect the results and cancel the tests that run too long
+        try
         {
-            String tname = ((ReferenceTestCase) list.get(i)).getName();
-            float tvalue;
-            
-            Future<Float> future = futures.get(i);
-            if (future != null)
+            while (!running.isEmpty())
             {
-                try
+                Future<Float> future = completion.poll(1, TimeUnit.SECONDS);
+                if (future != null)
                 {
-                    tvalue = future.get();
-                } catch (ExecutionException e) {
-                    log.error(tname + " (" + i + "): " + e.getMessage());
-                    e.printStackTrace();
-                    tvalue = 1.0f;
-                } catch (CancellationException e) {
-                    log.error(tname + " (" + i + "): " + e.getMessage());
-                    e.printStackTrace();
-                    tvalue = 1.0f;
-                } catch (InterruptedException e) {
-                    log.error(tname + " (" + i + "): " + e.getMessage());
-                    e.printStackTrace();
-                    tvalue = 1.0f;
+                    TestTask task = running.remove(future);
+                    task.result = getResult(task, future);
+                }
+                final long now = System.currentTimeMillis();
+                for (Map.Entry<Future<Float>, TestTask> entry : running.entrySet())
+                {
+                    TestTask task = entry.getValue();
+                    if (task.started > 0 && now - task.started > taskTimeout * 1000L && !task.timedOut)
+                    {
+                        log.error(task.test.getName() + ": timeout after " + taskTimeout + "s");
+                        task.timedOut = true;
+                        if (entry.getKey().cancel(true)) //the cancelled future is passed to the completion queue
+                            timeoutCount++; //not finished in the meantime, the result is a failure
+                    }
                 }
             }
-            else
-            {
-                log.error(tname + " (" + i + "): result not available");
-                tvalue = 1.0f;
-            }
-            
-            results.put(tname, tvalue);
+        } catch (InterruptedException e) {
+            log.error("Interrupted: {}", e.getMessage());
+            for (Future<Float> future : running.keySet())
+                future.cancel(true);
+        }
+        //store the results in the test order
+        for (TestTask task : tasks)
+            results.put(task.test.getName(), task.result);
+        elapsedTime = System.currentTimeMillis() - startTime;
+        exec.shutdownNow();
+        logSummary();
+    }
+    
+    /**
+     * Obtains the result of a finished test.
+     */
+    private float getResult(TestTask task, Future<Float> future) throws InterruptedException
+    {
+        String tname = task.test.getName();
+        try
+        {
+            return future.get();
+        } catch (ExecutionException e) {
+            log.error(tname + ": " + e.getMessage());
+            e.printStackTrace();
+        } catch (CancellationException e) {
+            log.error(tname + ": cancelled");
+        }
+        return 1.0f;
+    }
+    
+    /**
+     * Logs the summary of the last execution. Each test is counted as passed, failed or timed out.
+     */
+    private void logSummary()
+    {
+        int passed = 0;
+        for (Float result : results.values())
+        {
+            if (result != null && result == 0.0f)
+                passed++;
         }
-        //all results should be stored, shutdown the threads
-        exec.shutdown();
+        final int failed = results.size() - passed - timeoutCount; //the timed out tests have a non-zero result
+        final double seconds = elapsedTime / 1000.0;
+        log.info(String.format("Completed %d tests in %.1fs using %d threads (%.2f tests/s): %d passed, %d failed, %d timed out",
+                totalCount, seconds, threadsUsed, (seconds > 0) ? totalCount / seconds : 0.0,
+                passed, failed, timeoutCount));
     }
     
     /**
@@ -305,6 +359,9 @@ public class TestBatch
         Runtime runtime = Runtime.getRuntime();
         long minFree = runtime.freeMemory();
         List<Callable<Float>> list = getTestList(selected);
+        totalCount = list.size();
+        timeoutCount = 0;
+        startTime = System.currentTimeMillis();
         for (int i = 0; i < list.size(); i++)
         {
             Callable<Float> test = list.get(i);
@@ -316,7 +373,8 @@ public class TestBatch
                 Float result = test.call();
                 results.put(tname, result);
             } catch (Exception e) {
-                log.error(e.getMessage());
+                log.error(tname + ": " + e.getMessage());
+                results.put(tname, 1.0f); //the same result as for the failed tests in the parallel mode
             }
             long free = runtime.freeMemory();
             if (free < minFree) minFree = free;
@@ -325,6 +383,8 @@ public class TestBatch
                 System.gc();
             System.out.println(" free:" + (free/1000) + " min:" + (minFree/1000));
         }
+        elapsedTime = System.currentTimeMillis() - startTime;
+        logSummary();
     }
     
     /**
@@ -423,13 +483,82 @@ public class TestBatch
         }
     }
     
+    /**
+     * Obtains the wall-clock time of the last execution.
+     * @return the time in milliseconds
+     */
+    public long getElapsedTime()
+    {
+        return elapsedTime;
+    }
+    
+    /**
+     * Obtains the number of tests cancelled due to the timeout in the last parallel execution.
+     * @return the number of tests
+     */
+    public int getTimeoutCount()
+    {
+        return timeoutCount;
+    }
+    
+    public int getTaskTimeout()
+    {
+        return taskTimeout;
+    }
+    
+    /**
+     * Sets the maximal execution time of a single test in the parallel execution.
+     * The default value is 30 seconds.
+     * @param taskTimeout the timeout in seconds
+     */
+    public void setTaskTimeout(int taskTimeout)
+    {
+        this.taskTimeout = taskTimeout;
+    }
+    
     public synchronized void reportCompletion(ReferenceTestCase testCase)
     {
         completedCount++;
         if (completedCount % 10 == 0)
-            log.info("Completed " + completedCount + "/" + totalCount);
+        {
+            final double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+            log.info(String.format("Completed %d/%d (%.1fs, %.2f tests/s)", completedCount, totalCount,
+                    seconds, (seconds > 0) ? completedCount / seconds : 0.0));
+        }
+    }
+    
+    /**
+     * A test executed by the executor service. It records the start time for checking the timeout
+     * and reports the completion to the batch.
+     */
+    private class TestTask implements Callable<Float>
+    {
+        public final ReferenceTestCase test;
+        public volatile long started;
+        public boolean timedOut;
+        public float result = 1.0f;
+        
+        public TestTask(ReferenceTestCase test)
+        {
+            this.test = test;
+        }
+
+        @Override
+        public Float call() throws Exception
+        {
+            started = System.currentTimeMillis();
+            try
+            {
+                return test.call();
+            }
+            finally
+            {
+                reportCompletion(test); //the only place where the completion is reported
+            }
+        }
     }
     
+    
     public class SourceEntry
     {
         public String name;
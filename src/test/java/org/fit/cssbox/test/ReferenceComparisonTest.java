@@ -35,7 +35,9 @@ import org.junit.Test;
  */
 public class ReferenceComparisonTest
 {
-    private static final int THREADS = 1;
+    /** The number of test threads; may be set using the cssbox.test.threads system property */
+    private static final int THREADS = Integer.getInteger("cssbox.test.threads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
 
     @Test
     public void checkForRegressions() throws MalformedURLException